@@ -0,0 +1,150 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步操作日志
+ * 调用方只把日志放进有界队列，由单个后台线程按批写入数据库：
+ * 攒满 log.batchSize 条或距第一条超过 log.flushMillis 毫秒即在一个事务中写入。
+ * 队列满时新日志被丢弃并计数，不阻塞界面和搜索；程序退出时在关闭连接池前写完剩余日志
+ */
+public class AuditLog {
+    private static final int QUEUE_CAPACITY = Math.max(1, AppConfig.getInt("log.queueCapacity", 10000));
+    private static final int BATCH_SIZE = Math.max(1, AppConfig.getInt("log.batchSize", 200));
+    private static final long FLUSH_MILLIS = Math.max(1, AppConfig.getInt("log.flushMillis", 500));
+    // 退出时等待写线程写完剩余日志的最长时间
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+    // 丢弃日志的提示最多每隔这么久输出一次
+    private static final long DROP_REPORT_MILLIS = 5000;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 一条待写入的日志
+     */
+    static final class Entry {
+        final String time;
+        final String action;
+        final String details;
+
+        Entry(String time, String action, String details) {
+            this.time = time;
+            this.action = action;
+            this.details = details;
+        }
+    }
+
+    private static final BlockingQueue<Entry> QUEUE = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final List<Runnable> FLUSH_LISTENERS = new CopyOnWriteArrayList<>();
+    private static Thread writer;
+    private static volatile boolean stopped;
+
+    /**
+     * 记录一条操作日志（时间取调用时刻）
+     * @return 队列已满或已停止写入时返回 false，该条日志被丢弃
+     */
+    public static boolean log(String action, String details) {
+        if (stopped) {
+            DROPPED.incrementAndGet();
+            return false;
+        }
+        ensureStarted();
+        Entry entry = new Entry(LocalDateTime.now().format(TIME_FORMAT), action, details);
+        if (QUEUE.offer(entry)) return true;
+        DROPPED.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 因队列已满（或程序退出）被丢弃的日志总数
+     */
+    public static long getDroppedCount() {
+        return DROPPED.get();
+    }
+
+    /**
+     * 注册每批日志写入数据库后的回调（在写线程上调用）
+     */
+    public static void addFlushListener(Runnable listener) {
+        FLUSH_LISTENERS.add(listener);
+    }
+
+    public static void removeFlushListener(Runnable listener) {
+        FLUSH_LISTENERS.remove(listener);
+    }
+
+    private static synchronized void ensureStarted() {
+        if (writer != null) return;
+        writer = new Thread(AuditLog::runWriter, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        ConnectionPool.getDefault().beforeClose(AuditLog::shutdown);
+    }
+
+    /**
+     * 停止接收日志，等待写线程把队列中剩余的日志写完
+     */
+    static void shutdown() {
+        Thread thread;
+        synchronized (AuditLog.class) {
+            stopped = true;
+            thread = writer;
+        }
+        if (thread == null) return;
+        thread.interrupt();
+        try {
+            thread.join(SHUTDOWN_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runWriter() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        long reportedDropped = 0;
+        long lastReport = 0;
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(QUEUE.take());
+                // 从第一条开始计时，攒批直到数量或时间达到上限
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_MILLIS);
+                while (batch.size() < BATCH_SIZE) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Entry entry = QUEUE.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (entry == null) break;
+                    batch.add(entry);
+                }
+            } catch (InterruptedException e) {
+                // 退出：写完队列中剩余的日志后结束
+                stopping = true;
+                QUEUE.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                QueryDB.addLogs(batch);
+                batch.clear();
+                for (Runnable listener : FLUSH_LISTENERS) {
+                    try {
+                        listener.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            long dropped = DROPPED.get();
+            long now = System.currentTimeMillis();
+            if (dropped != reportedDropped && (stopping || now - lastReport >= DROP_REPORT_MILLIS)) {
+                System.err.println("日志队列已满，累计丢弃 " + dropped + " 条日志");
+                reportedDropped = dropped;
+                lastReport = now;
+            }
+        }
+    }
+}
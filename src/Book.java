@@ -0,0 +1,30 @@
+/**
+ * 一本书（只读）
+ */
+public final class Book {
+    private final int id;
+    private final BookPath path;
+    private final String kind;
+
+    public Book(int id, BookPath path, String kind) {
+        this.id = id;
+        this.path = path;
+        this.kind = kind;
+    }
+
+    public int getId() { return id; }
+
+    /**
+     * 书名（目录前缀 + 文件名）
+     */
+    public BookPath getPath() { return path; }
+
+    public String getName() { return path.toString(); }
+
+    public String getKind() { return kind; }
+
+    @Override
+    public String toString() {
+        return id + "\t" + path + "\t" + kind;
+    }
+}
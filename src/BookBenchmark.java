@@ -0,0 +1,392 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+import java.util.stream.Stream;
+
+/**
+ * 数据访问与导入热点路径的基准测试
+ * <pre>
+ *   java BookBenchmark [书籍数量列表] [测量轮数] [结果 CSV] [基线 CSV]
+ *   java BookBenchmark 1000,10000,100000 5 result.csv baseline.csv
+ * </pre>
+ * 对每个规模生成与 kindlebooks_index.txt 格式相同的合成索引（中英文混合书名、多级目录），
+ * 在临时目录的独立数据库中测量：导入吞吐量、搜索延迟（书名开头 / 书名中间 / 无结果，
+ * 长关键字走 FTS，两个字的关键字走 LIKE）、全表读取和首页分页。
+ * 每项先预热再按 1 秒一轮测量，输出平均值 ± 标准差、每次操作分配的字节数和 GC 次数/耗时。
+ * 指定基线 CSV 时同时列出与基线的差异，便于发现性能退化
+ */
+public class BookBenchmark {
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int BOOKS_PER_DIR = 50;
+    private static final String NO_HIT = "不存在的书名zq";
+
+    // 书名用字：常见汉字、英文单词、作者名、后缀按真实书库的比例
+    private static final String CJK = "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定行学法所民得经十三之进着等部度家电力里如水化高自二理起小物现实加量都两体制机当使点从业本去把性好应开它合还因由其些然前外天政四日那社义事平形相全表间样与关各重新线内数正心反你明看原又么利比或但质气第向道命此变条只没结解问意建月公无系军很情者最立代想已通并提直题党程展五果料象员革位入常文总次品式活设及管特件长求老头基资边流路级少图山统接知较将组见计别她手角期根论运农指几九区强放决西被干做必战先回则任取据处理府研质";
+    private static final String[] WORDS = {"The", "Art", "of", "War", "History", "Python", "Java", "Kindle",
+            "Guide", "Introduction", "Complete", "Edition", "Modern", "World", "Economics", "Design", "Data",
+            "Science", "Learning", "Classic", "Stories", "Vol", "English", "Harry", "Potter", "Notes"};
+    private static final String[] AUTHORS = {"刘慈欣", "东野圭吾", "村上春树", "余华", "金庸", "王小波", "Stephen King",
+            "J.K. Rowling", "Haruki Murakami", "钱钟书", "鲁迅", "George Orwell", "张爱玲", "Agatha Christie"};
+    private static final String[] KINDS = {"azw3", "mobi", "epub", "pdf", "txt"};
+    private static final int[] KIND_WEIGHTS = {72, 24, 2, 1, 1};
+
+    /**
+     * 一次被测操作，返回值用于防止结果被优化掉
+     */
+    @FunctionalInterface
+    private interface Op {
+        long run() throws Exception;
+    }
+
+    /**
+     * 一项测量结果
+     */
+    private static final class Result {
+        final String name;
+        final int size;
+        final double score;
+        final double error;
+        final String unit;
+        final double bytesPerOp;
+        final long gcCount;
+        final long gcMillis;
+
+        Result(String name, int size, double score, double error, String unit, double bytesPerOp,
+               long gcCount, long gcMillis) {
+            this.name = name;
+            this.size = size;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.bytesPerOp = bytesPerOp;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        String key() {
+            return name + "@" + size;
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = Stream.of((args.length > 0 ? args[0] : "1000,10000,100000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path csv = args.length > 2 ? Paths.get(args[2]) : null;
+        Map<String, Double> baseline = args.length > 3 ? readBaseline(Paths.get(args[3])) : Collections.emptyMap();
+
+        // 结果表写到标准输出，导入统计等过程信息转到标准错误
+        PrintStream out = System.out;
+        System.setOut(System.err);
+
+        Path workDir = Files.createTempDirectory("book-bench");
+        List<Result> results = new ArrayList<>();
+        try {
+            for (int size : sizes) {
+                System.err.println("== " + size + " 本书 ==");
+                Path index = workDir.resolve("index-" + size + ".txt");
+                List<String> names = generateIndex(index, size, new Random(42));
+                results.addAll(runSize(workDir, index, size, names, iterations));
+            }
+        } finally {
+            deleteTree(workDir);
+        }
+
+        out.printf("%-22s %9s %14s %12s %-8s %14s %6s %8s %8s%n",
+                "Benchmark", "Size", "Score", "Error", "Units", "Alloc B/op", "GCs", "GC ms", "vs base");
+        for (Result r : results) {
+            Double base = baseline.get(r.key());
+            String delta = base == null || base == 0 ? "" : String.format("%+.1f%%", (r.score - base) / base * 100);
+            out.printf("%-22s %9d %14.3f %12.3f %-8s %14.0f %6d %8d %8s%n",
+                    r.name, r.size, r.score, r.error, r.unit, r.bytesPerOp, r.gcCount, r.gcMillis, delta);
+        }
+        if (csv != null) writeCsv(csv, results);
+        out.println("（score 为 ops/s 或 books/s 时越大越好，us/op 时越小越好）");
+        if (sink == 42) out.println();
+    }
+
+    private static List<Result> runSize(Path workDir, Path index, int size, List<String> names, int iterations)
+            throws Exception {
+        List<Result> results = new ArrayList<>();
+        Path db = workDir.resolve("bench-" + size + ".db");
+
+        // 导入：每轮使用全新的数据库
+        double[] rates = new double[iterations];
+        long[] alloc = new long[iterations];
+        GcSnapshot gcBefore = GcSnapshot.take();
+        for (int i = -1; i < iterations; i++) {
+            deleteDatabase(db);
+            ConnectionPool pool = openPool(db);
+            try {
+                SqliteBookRepository repository = new SqliteBookRepository(pool);
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                long imported = repository.importFiles(Collections.singletonList(index), null);
+                long elapsed = System.nanoTime() - start;
+                // 第一轮是预热
+                if (i >= 0) {
+                    rates[i] = imported * 1e9 / elapsed;
+                    alloc[i] = (allocatedBytes() - bytes) / Math.max(1, imported);
+                }
+            } finally {
+                pool.close();
+            }
+        }
+        GcSnapshot gc = GcSnapshot.take().minus(gcBefore);
+        results.add(new Result("import", size, mean(rates), stddev(rates), "books/s", mean(alloc), gc.count, gc.millis));
+
+        // 查询使用最后一次导入的数据库
+        ConnectionPool pool = openPool(db);
+        try {
+            SqliteBookRepository repository = new SqliteBookRepository(pool);
+            Random random = new Random(7);
+            String[] prefix = new String[64];
+            String[] infix = new String[64];
+            String[] shortInfix = new String[64];
+            for (int i = 0; i < prefix.length; i++) {
+                String name = names.get(random.nextInt(names.size()));
+                prefix[i] = name.substring(0, Math.min(4, name.length()));
+                int mid = name.length() / 2;
+                infix[i] = name.substring(Math.max(0, mid - 2), Math.min(name.length(), mid + 2));
+                shortInfix[i] = name.substring(Math.max(0, mid - 1), Math.min(name.length(), mid + 1));
+            }
+            int[] cursor = {0};
+            results.add(measure("search.prefix", size, iterations, () -> countSearch(repository, prefix[cursor[0]++ & 63])));
+            results.add(measure("search.infix", size, iterations, () -> countSearch(repository, infix[cursor[0]++ & 63])));
+            results.add(measure("search.infix.like", size, iterations, () -> countSearch(repository, shortInfix[cursor[0]++ & 63])));
+            results.add(measure("search.noHit", size, iterations, () -> countSearch(repository, NO_HIT)));
+            results.add(measure("listAll", size, iterations, () -> {
+                // 与 QueryDB.getAllBooks 相同，构造界面使用的 Vector 行
+                Vector<Vector<Object>> rows = new Vector<>();
+                repository.forEach(book -> rows.add(QueryDB.bookRow(book)));
+                return rows.size();
+            }));
+            results.add(measure("page.first", size, iterations, () -> {
+                long[] n = {0};
+                repository.page(Integer.MAX_VALUE, 100, book -> n[0] += book.getId());
+                return n[0];
+            }));
+        } finally {
+            pool.close();
+            deleteDatabase(db);
+        }
+        return results;
+    }
+
+    private static long countSearch(BookRepository repository, String keyword) throws SQLException {
+        long[] n = {0};
+        repository.search(keyword, book -> n[0]++);
+        return n[0];
+    }
+
+    /**
+     * 按时间测量：预热若干轮后，每轮 1 秒，结果为每次操作的平均微秒数
+     */
+    private static Result measure(String name, int size, int iterations, Op op) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) runFor(op, ITERATION_NANOS);
+        double[] micros = new double[iterations];
+        double[] alloc = new double[iterations];
+        GcSnapshot gcBefore = GcSnapshot.take();
+        for (int i = 0; i < iterations; i++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            long ops = runFor(op, ITERATION_NANOS);
+            long elapsed = System.nanoTime() - start;
+            micros[i] = elapsed / 1e3 / ops;
+            alloc[i] = (double) (allocatedBytes() - bytes) / ops;
+        }
+        GcSnapshot gc = GcSnapshot.take().minus(gcBefore);
+        System.err.printf("  %-20s %.3f us/op%n", name, mean(micros));
+        return new Result(name, size, mean(micros), stddev(micros), "us/op", mean(alloc), gc.count, gc.millis);
+    }
+
+    private static long runFor(Op op, long nanos) throws Exception {
+        long deadline = System.nanoTime() + nanos;
+        long ops = 0;
+        do {
+            sink += op.run();
+            ops++;
+        } while (System.nanoTime() < deadline);
+        return ops;
+    }
+
+    private static ConnectionPool openPool(Path db) throws SQLException {
+        ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + db, 2);
+        SchemaMigrator.migrate(pool);
+        return pool;
+    }
+
+    // ================= 合成书库 =================
+
+    /**
+     * 生成 tree 格式的索引文件
+     * @return 生成的全部书名（不含目录），用于挑选搜索关键字
+     */
+    static List<String> generateIndex(Path file, int books, Random random) throws IOException {
+        List<String> names = new ArrayList<>(books);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("书库\n\n");
+            int dirNo = 0;
+            while (names.size() < books) {
+                // 最多三级目录
+                StringBuilder dir = new StringBuilder("./书库");
+                int depth = 1 + random.nextInt(3);
+                for (int d = 0; d < depth; d++) dir.append('/').append(title(random, 2, 6)).append(dirNo);
+                out.write(dir.append(":\n").toString());
+                int count = Math.min(books - names.size(), 1 + random.nextInt(BOOKS_PER_DIR * 2));
+                for (int i = 0; i < count; i++) {
+                    String name = title(random, 3, 14);
+                    if (random.nextInt(3) == 0) name += " - " + AUTHORS[random.nextInt(AUTHORS.length)];
+                    // 同一目录下不重复
+                    name += "(" + names.size() + ")";
+                    out.write(name + "." + kind(random) + "\n");
+                    names.add(name);
+                }
+                out.write("\n");
+                dirNo++;
+            }
+        }
+        return names;
+    }
+
+    private static String title(Random random, int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        int length = min + random.nextInt(max - min + 1);
+        boolean ascii = random.nextInt(4) == 0;
+        while (sb.length() < length) {
+            if (ascii || random.nextInt(8) == 0) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            } else {
+                sb.append(CJK.charAt(random.nextInt(CJK.length())));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String kind(Random random) {
+        int r = random.nextInt(100);
+        for (int i = 0; i < KINDS.length; i++) {
+            r -= KIND_WEIGHTS[i];
+            if (r < 0) return KINDS[i];
+        }
+        return KINDS[0];
+    }
+
+    // ================= 统计与输出 =================
+
+    /**
+     * GC 次数与累计耗时
+     */
+    private static final class GcSnapshot {
+        final long count;
+        final long millis;
+
+        GcSnapshot(long count, long millis) {
+            this.count = count;
+            this.millis = millis;
+        }
+
+        static GcSnapshot take() {
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return new GcSnapshot(count, millis);
+        }
+
+        GcSnapshot minus(GcSnapshot other) {
+            return new GcSnapshot(count - other.count, millis - other.millis);
+        }
+    }
+
+    /**
+     * 所有线程累计分配的字节数（导入的解析线程和写线程也计算在内）
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getTotalThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) sum += v;
+        return sum / values.length;
+    }
+
+    private static double mean(long[] values) {
+        double sum = 0;
+        for (long v : values) sum += v;
+        return sum / values.length;
+    }
+
+    private static double stddev(double[] values) {
+        if (values.length < 2) return 0;
+        double mean = mean(values);
+        double sum = 0;
+        for (double v : values) sum += (v - mean) * (v - mean);
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    private static void writeCsv(Path csv, List<Result> results) throws IOException {
+        boolean header = !Files.exists(csv);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (header) out.println("benchmark,size,score,error,unit,allocBytesPerOp,gcCount,gcMillis");
+            for (Result r : results) {
+                out.printf("%s,%d,%.3f,%.3f,%s,%.0f,%d,%d%n",
+                        r.name, r.size, r.score, r.error, r.unit, r.bytesPerOp, r.gcCount, r.gcMillis);
+            }
+        }
+    }
+
+    /**
+     * 读取之前输出的 CSV，同一项出现多次时取最后一次
+     */
+    private static Map<String, Double> readBaseline(Path csv) throws IOException {
+        Map<String, Double> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(csv, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (fields.length < 3 || fields[0].equals("benchmark")) continue;
+            baseline.put(fields[0] + "@" + fields[1], Double.parseDouble(fields[2]));
+        }
+        return baseline;
+    }
+
+    private static void deleteDatabase(Path db) throws IOException {
+        Files.deleteIfExists(db);
+        Files.deleteIfExists(Paths.get(db + "-wal"));
+        Files.deleteIfExists(Paths.get(db + "-shm"));
+        Files.deleteIfExists(Paths.get(db + "-journal"));
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Collections.reverseOrder())::iterator) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 无界面的命令行入口（不加载 Swing/AWT，可在无显示器的服务器上运行）
+ * <pre>
+ *   java BookCli import [索引文件或目录...]   不带参数或参数为 "-" 时从标准输入读取
+ *   java BookCli search [--fuzzy] &lt;关键字&gt;     --fuzzy：拼音首字母 / 全拼 / 容错匹配
+ *   java BookCli export [选项] [文件]        默认每行一本书：id \t 书名 \t 类型，写到标准输出
+ *       --format tsv|csv|ndjson|bin  --logs（导出日志表）  --gzip
+ *   java BookCli load &lt;文件|-&gt;              导入 export --format bin 生成的快照（可为 gzip 压缩）
+ *   java BookCli stats
+ *   java BookCli vacuum
+ *   java BookCli snapshot                     在线创建数据库快照，输出快照文件路径
+ *   java BookCli snapshots                    列出快照：文件名 \t 时间 \t 来源 \t 字节数
+ *   java BookCli restore &lt;快照&gt;             用快照替换当前数据库（快照目录中的文件可只写文件名）
+ *   java BookCli serve [端口]                启动 HTTP 查询服务（见 BookHttpServer），直到进程被终止
+ *   java BookCli shards                       列出书库：名字 \t 书籍数量 \t 数据库文件
+ *   java BookCli --shard &lt;书库&gt; &lt;命令&gt; ...   在某个书库上执行 import / load / search / export / stats / vacuum
+ * </pre>
+ * 配置了多个书库（见 CatalogShards）时，不指定 --shard 的 search 在所有书库中搜索，每行末尾附加书库名；
+ * import / load 写入 import.shard 指定的书库。快照、恢复和 HTTP 服务只针对主书库。
+ * 结果以 UTF-8 写到标准输出，库内部的提示信息改写到标准错误，输出可以直接交给管道处理。
+ * 退出码：0 成功，1 执行失败，2 用法错误
+ */
+public class BookCli {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_ERROR = 1;
+    private static final int EXIT_USAGE = 2;
+    // 标准输入导入时在 import_files 中记录的来源名
+    private static final String STDIN_SOURCE = "<stdin>";
+
+    private final BookRepository repository;
+    // --shard 指定的书库，未指定时为 null
+    private final String shard;
+    private final PrintWriter out;
+
+    BookCli(BookRepository repository, PrintWriter out) {
+        this(repository, null, out);
+    }
+
+    BookCli(BookRepository repository, String shard, PrintWriter out) {
+        this.repository = repository;
+        this.shard = shard;
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        // 结果只写到原来的标准输出，其余打印（导入统计等）都转到标准错误
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), StandardCharsets.UTF_8));
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+
+        int code;
+        String shard = null;
+        if (args.length >= 2 && args[0].equals("--shard")) {
+            shard = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length == 0 || shard != null && CatalogShards.shard(shard) == null) {
+            if (args.length > 0) System.err.println("未配置的书库: " + shard);
+            code = usage();
+        } else {
+            try {
+                BookRepository repository = shard != null
+                        ? CatalogShards.repository(shard)
+                        : SqliteBookRepository.getDefault();
+                code = new BookCli(repository, shard, out).run(args);
+            } catch (Exception e) {
+                System.err.println("错误: " + e.getMessage());
+                e.printStackTrace();
+                code = EXIT_ERROR;
+            }
+        }
+        out.flush();
+        if (out.checkError()) code = EXIT_ERROR;
+        // 退出时由连接池的关闭钩子写完日志并执行检查点
+        System.exit(code);
+    }
+
+    int run(String[] args) throws Exception {
+        String command = args[0];
+        switch (command) {
+            case "import":
+                return importBooks(args);
+            case "search":
+                if (args.length == 3 && args[1].equals("--fuzzy")) {
+                    if (!isMainShard()) return usage();
+                    for (Book book : FuzzyIndex.search(args[2], null)) out.println(book);
+                    return EXIT_OK;
+                }
+                if (args.length != 2) return usage();
+                if (shard == null && CatalogShards.isSharded()) {
+                    CatalogShards.search(args[1], null, hit -> out.println(hit));
+                } else {
+                    repository.search(args[1], book -> out.println(book));
+                }
+                return EXIT_OK;
+            case "export":
+                return export(args);
+            case "load":
+                return load(args);
+            case "stats":
+                if (args.length != 1) return usage();
+                printStats(repository.stats());
+                return EXIT_OK;
+            case "vacuum":
+                if (args.length != 1) return usage();
+                repository.vacuum();
+                AuditLog.log("Vacuum", "命令行整理数据库");
+                return EXIT_OK;
+            case "snapshot": {
+                if (args.length != 1 || !isMainShard()) return usage();
+                Snapshots.Snapshot snapshot = Snapshots.take(Snapshots.MANUAL);
+                AuditLog.log("Snapshot", "命令行创建快照: " + snapshot.getPath().getFileName());
+                out.println(snapshot.getPath());
+                return EXIT_OK;
+            }
+            case "snapshots":
+                if (args.length != 1 || !isMainShard()) return usage();
+                for (Snapshots.Snapshot snapshot : Snapshots.list()) out.println(snapshot);
+                return EXIT_OK;
+            case "restore":
+                if (args.length != 2 || !isMainShard()) return usage();
+                Snapshots.restore(restorePath(args[1]));
+                AuditLog.log("Restore", "命令行从快照恢复: " + args[1]);
+                return EXIT_OK;
+            case "serve":
+                if (!isMainShard()) return usage();
+                return serve(args);
+            case "shards":
+                if (args.length != 1) return usage();
+                printShards();
+                return EXIT_OK;
+            default:
+                return usage();
+        }
+    }
+
+    /**
+     * 快照、恢复、模糊搜索和 HTTP 服务只针对主书库
+     */
+    private boolean isMainShard() {
+        if (shard == null || shard.equals(CatalogShards.MAIN)) return true;
+        System.err.println("该命令只支持主书库 " + CatalogShards.MAIN);
+        return false;
+    }
+
+    /**
+     * import / load 写入的书库：--shard 指定的书库，未指定时为 import.shard
+     */
+    private String importShard() {
+        return shard != null ? shard : CatalogShards.importTarget();
+    }
+
+    private static String shardSuffix(String target) {
+        return target.equals(CatalogShards.MAIN) ? "" : " -> 书库 " + target;
+    }
+
+    private void printShards() throws SQLException {
+        for (CatalogShards.Shard s : CatalogShards.shards()) {
+            out.println(s.getName() + "\t" + s.repository().count() + "\t"
+                    + (s.isMain() ? s.repository().getPool().getUrl().replaceFirst("^jdbc:sqlite:", "") : s.getPath()));
+        }
+    }
+
+    /**
+     * 恢复的快照：文件路径，或快照目录中的文件名
+     */
+    private static Path restorePath(String name) {
+        Path path = Paths.get(name);
+        if (Files.exists(path)) return path;
+        return Snapshots.directory().resolve(name);
+    }
+
+    private int serve(String[] args) throws Exception {
+        if (args.length > 2) return usage();
+        int port;
+        try {
+            port = args.length == 2 ? Integer.parseInt(args[1]) : AppConfig.getInt("http.port", 8080);
+        } catch (NumberFormatException e) {
+            return usage();
+        }
+        BookHttpServer.startDefault(port);
+        Snapshots.start();
+        // 服务在虚拟线程上运行，主线程一直等待；Ctrl+C 时由关闭钩子停止服务并关闭数据库
+        Thread.currentThread().join();
+        return EXIT_OK;
+    }
+
+    private int export(String[] args) throws Exception {
+        CatalogExporter.Format format = CatalogExporter.Format.TSV;
+        CatalogExporter.Table table = CatalogExporter.Table.BOOKS;
+        boolean gzip = false;
+        Path file = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--format":
+                    if (++i == args.length || (format = CatalogExporter.Format.parse(args[i])) == null) return usage();
+                    break;
+                case "--logs":
+                    table = CatalogExporter.Table.LOGS;
+                    break;
+                case "--gzip":
+                    gzip = true;
+                    break;
+                default:
+                    if (file != null || args[i].startsWith("--")) return usage();
+                    file = Paths.get(args[i]);
+            }
+        }
+
+        CatalogExporter exporter = new CatalogExporter(pool());
+        long rows;
+        if (file != null) {
+            rows = exporter.export(file, table, format, gzip);
+        } else {
+            // 直接写标准输出的文件描述符，之前缓冲的文本先写出
+            out.flush();
+            rows = exporter.export(new FileOutputStream(FileDescriptor.out).getChannel(), table, format, gzip);
+        }
+        System.err.println("已导出 " + rows + " 行");
+        return EXIT_OK;
+    }
+
+    private int load(String[] args) throws Exception {
+        if (args.length != 2) return usage();
+        String target = importShard();
+        CatalogLoader loader = new CatalogLoader(CatalogShards.repository(target).getPool());
+        CatalogLoader.Result result = args[1].equals("-")
+                ? loader.load(System.in)
+                : loader.load(Paths.get(args[1]));
+        AuditLog.log("Import", "命令行导入快照: " + args[1] + shardSuffix(target) + " (" + result + ")");
+        System.err.println(result);
+        out.println(result.books);
+        return EXIT_OK;
+    }
+
+    /**
+     * 导出和快照导入直接读写数据库表
+     */
+    private ConnectionPool pool() {
+        return repository instanceof SqliteBookRepository
+                ? ((SqliteBookRepository) repository).getPool()
+                : ConnectionPool.getDefault();
+    }
+
+    private int importBooks(String[] args) throws Exception {
+        List<Path> files = new ArrayList<>();
+        boolean stdin = args.length == 1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-")) stdin = true;
+            else files.add(Paths.get(args[i]));
+        }
+
+        String target = importShard();
+        BookRepository targetRepository = CatalogShards.repository(target);
+        long imported = 0;
+        if (!files.isEmpty()) {
+            imported += targetRepository.importFiles(files, null);
+        }
+        if (stdin) {
+            // 标准输入只能读一次，不做指纹比较；已存在的书籍不会重复插入
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16);
+            imported += targetRepository.importStream(reader, STDIN_SOURCE, null);
+        }
+        AuditLog.log("Import", "命令行导入: " + (stdin ? STDIN_SOURCE + " " : "") + files + shardSuffix(target)
+                + " (新增 " + imported + " 本)");
+        out.println(imported);
+        return EXIT_OK;
+    }
+
+    private void printStats(BookStats stats) {
+        out.println("books\t" + stats.getBooks());
+        out.println("directories\t" + stats.getDirectories());
+        out.println("sources\t" + stats.getSources());
+        out.println("logs\t" + stats.getLogs());
+        out.println("databaseBytes\t" + stats.getDatabaseBytes());
+        out.println("schemaVersion\t" + stats.getSchemaVersion());
+        for (Map.Entry<String, Integer> kind : stats.getKinds().entrySet()) {
+            out.println("kind." + kind.getKey() + "\t" + kind.getValue());
+        }
+    }
+
+    private static int usage() {
+        System.err.println("用法: java BookCli <命令> [参数]");
+        System.err.println("  import [文件或目录... | -]   导入索引文件，不带参数或 \"-\" 时读取标准输入");
+        System.err.println("  search [--fuzzy] <关键字>   搜索书名，--fuzzy 按拼音首字母 / 全拼查找并容忍一两个错字");
+        System.err.println("  export [选项] [文件]        导出所有书籍，默认为 TSV（id\\t书名\\t类型）写到标准输出");
+        System.err.println("      --format tsv|csv|ndjson|bin   --logs 导出日志表   --gzip 压缩");
+        System.err.println("  load <文件 | ->             导入 export --format bin 生成的快照");
+        System.err.println("  stats                       数据库统计");
+        System.err.println("  vacuum                      整理全文索引并压缩数据库");
+        System.err.println("  snapshot                    在线创建数据库快照");
+        System.err.println("  snapshots                   列出快照");
+        System.err.println("  restore <快照>              用快照替换当前数据库（先为当前数据库创建快照）");
+        System.err.println("  serve [端口]                启动 HTTP 查询服务（默认端口取 http.port，未配置时为 8080）");
+        System.err.println("  shards                      列出书库及书籍数量");
+        System.err.println("  --shard <书库> <命令>       在某个书库上执行 import / load / search / export / stats / vacuum");
+        return EXIT_USAGE;
+    }
+}
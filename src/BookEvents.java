@@ -0,0 +1,72 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 书籍数据变更通知
+ * QueryDB / SetUpDB 的写操作提交后发出，携带受影响的书籍 ID，
+ * 界面据此做增量更新，不必重新读取整张表。监听器在写入线程上被调用
+ */
+public class BookEvents {
+
+    public enum Type { INSERTED, UPDATED, DELETED, CLEARED }
+
+    /**
+     * 一次变更
+     */
+    public static final class Change {
+        private final Type type;
+        private final int[] ids;
+
+        Change(Type type, int[] ids) {
+            this.type = type;
+            this.ids = ids;
+        }
+
+        public Type getType() { return type; }
+
+        /**
+         * 受影响的书籍 ID（INSERTED 时按升序排列；CLEARED 时为空）
+         */
+        public int[] getIds() { return ids; }
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void booksChanged(Change change);
+    }
+
+    private static final CopyOnWriteArrayList<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    public static void addListener(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    static void fireInserted(int... ids) {
+        if (ids.length > 0) fire(new Change(Type.INSERTED, ids));
+    }
+
+    static void fireUpdated(int id) {
+        fire(new Change(Type.UPDATED, new int[]{id}));
+    }
+
+    static void fireDeleted(int id) {
+        fire(new Change(Type.DELETED, new int[]{id}));
+    }
+
+    static void fireCleared() {
+        fire(new Change(Type.CLEARED, new int[0]));
+    }
+
+    private static void fire(Change change) {
+        for (Listener listener : LISTENERS) {
+            try {
+                listener.booksChanged(change);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
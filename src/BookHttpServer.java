@@ -0,0 +1,513 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * 内嵌的 HTTP 查询服务（JDK 自带的 com.sun.net.httpserver，无额外依赖）
+ * <pre>
+ *   GET    /books?q=关键字              搜索
+ *   GET    /books?before=ID&amp;limit=N     按 ID 倒序分页，下一页的 before 取本页最后一本的 id
+ *                                       以上两种都可以加 &amp;kind=类型 只返回该类型的书籍
+ *   GET    /kinds                      各类型的书籍数量
+ *   GET    /books/{id}                 单本书
+ *   POST   /books   {"name": ..., "kind": ...}   添加（kind 省略时按后缀识别）
+ *   PUT    /books/{id}   {"name": ...}           修改书名
+ *   DELETE /books/{id}                 删除
+ *   GET    /metrics                    各操作的耗时统计（Prometheus 文本格式，?format=json 时为 JSON）
+ * </pre>
+ * 每个请求在一个虚拟线程上处理，查询受连接池中有限的读连接约束，写入经连接池的单个写连接串行执行；
+ * 同时处理的请求超过 http.maxConcurrent 时直接返回 503。列表和搜索结果边读边以分块编码写出，
+ * 不在内存中保存结果集（写出过程中出错时只能中断连接，客户端会收到不完整的 JSON）
+ */
+public class BookHttpServer {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // 请求体上限，书名远小于这个长度
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    // /books 请求的处理耗时（不含排队等待），出错计 5xx
+    private static final Metrics.Timer REQUEST = Metrics.timer("BookHttpServer.request");
+
+    private static BookHttpServer instance;
+
+    private final BookRepository repository;
+    // 操作日志总是写入默认数据库，只记录对默认书库的修改（压测等使用的副本不记录）
+    private final boolean audit;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore slots;
+
+    public BookHttpServer(BookRepository repository, InetSocketAddress address, int maxConcurrent) throws IOException {
+        this.repository = repository;
+        this.audit = repository instanceof SqliteBookRepository
+                && ConnectionPool.isDefault(((SqliteBookRepository) repository).getPool());
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/books", this::handle);
+        server.createContext("/kinds", this::kinds);
+        server.createContext("/metrics", this::metrics);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * 按配置项 http.port 启动全局服务，未配置端口时不做任何事
+     */
+    public static void startConfigured() {
+        int port = AppConfig.getInt("http.port", 0);
+        if (port <= 0) return;
+        try {
+            startDefault(port);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 在默认数据库上启动全局服务（http.bind 为监听地址），已启动时直接返回
+     */
+    public static synchronized BookHttpServer startDefault(int port) throws IOException {
+        if (instance == null) {
+            ConnectionPool pool = ConnectionPool.getDefault();
+            BookHttpServer server = new BookHttpServer(SqliteBookRepository.getDefault(),
+                    new InetSocketAddress(AppConfig.get("http.bind", "127.0.0.1"), port),
+                    AppConfig.getInt("http.maxConcurrent", 256));
+            server.start();
+            // 先停止接收请求，再关闭数据库连接
+            pool.beforeClose(server::stop);
+            instance = server;
+        }
+        return instance;
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("HTTP 服务已启动: http://" + server.getAddress().getHostString() + ":" + getPort() + "/books");
+    }
+
+    /**
+     * 实际监听的端口（以端口 0 创建时由系统分配）
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 停止服务，最多等待 1 秒让正在处理的请求完成
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!slots.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "服务繁忙");
+            return;
+        }
+        long t0 = REQUEST.start();
+        try {
+            route(exchange);
+        } catch (BadRequest e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (UncheckedIOException e) {
+            // 流式输出时客户端断开
+            throw e.getCause();
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "服务器错误: " + e.getMessage());
+        } finally {
+            if (exchange.getResponseCode() >= 500) REQUEST.fail(t0);
+            else REQUEST.stop(t0, 1);
+            slots.release();
+            exchange.close();
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                methodNotAllowed(exchange, "GET");
+                return;
+            }
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null && query.contains("format=json")) {
+                sendJson(exchange, 200, Metrics.toJson());
+                return;
+            }
+            byte[] bytes = Metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException, SQLException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        if (!path.equals("/books") && !path.startsWith("/books/")) {
+            sendError(exchange, 404, "不存在的路径: " + path);
+            return;
+        }
+        String rest = path.length() > "/books".length() ? path.substring("/books/".length()) : "";
+
+        if (rest.isEmpty()) {
+            switch (method) {
+                case "GET": list(exchange); return;
+                case "POST": add(exchange); return;
+                default: methodNotAllowed(exchange, "GET, POST"); return;
+            }
+        }
+
+        int id;
+        try {
+            id = Integer.parseInt(rest);
+        } catch (NumberFormatException e) {
+            sendError(exchange, 404, "不存在的路径: " + path);
+            return;
+        }
+        switch (method) {
+            case "GET": get(exchange, id); return;
+            case "PUT": rename(exchange, id); return;
+            case "DELETE": delete(exchange, id); return;
+            default: methodNotAllowed(exchange, "GET, PUT, DELETE");
+        }
+    }
+
+    // ================= 各接口 =================
+
+    private void list(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String keyword = query.get("q");
+        String kind = query.get("kind");
+        if (kind != null && kind.isEmpty()) throw new BadRequest("类型不能为空");
+        if (keyword != null) {
+            if (keyword.isEmpty()) throw new BadRequest("关键字不能为空");
+            streamBooks(exchange, consumer -> repository.search(keyword, kind, consumer));
+            return;
+        }
+        int before = intParam(query, "before", Integer.MAX_VALUE);
+        int limit = intParam(query, "limit", DEFAULT_PAGE_SIZE);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new BadRequest("limit 应在 1 到 " + MAX_PAGE_SIZE + " 之间");
+        streamBooks(exchange, consumer -> repository.page(before, limit, kind, consumer));
+    }
+
+    private void kinds(HttpExchange exchange) throws IOException {
+        if (!slots.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "服务繁忙");
+            exchange.close();
+            return;
+        }
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                methodNotAllowed(exchange, "GET");
+                return;
+            }
+            StringBuilder sb = new StringBuilder("{");
+            for (Map.Entry<String, Integer> entry : repository.kindCounts().entrySet()) {
+                if (sb.length() > 1) sb.append(',');
+                LogArchiver.appendJson(sb, entry.getKey());
+                sb.append(':').append(entry.getValue());
+            }
+            sendJson(exchange, 200, sb.append('}').toString());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "服务器错误: " + e.getMessage());
+        } finally {
+            slots.release();
+            exchange.close();
+        }
+    }
+
+    private void get(HttpExchange exchange, int id) throws IOException, SQLException {
+        Book book = repository.find(id);
+        if (book == null) {
+            sendError(exchange, 404, "书籍不存在: " + id);
+        } else {
+            sendJson(exchange, 200, bookJson(book));
+        }
+    }
+
+    private void add(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, String> body = readBody(exchange);
+        String name = body.get("name");
+        if (name == null || name.trim().isEmpty()) throw new BadRequest("缺少 name");
+        String kind = body.get("kind");
+        if (kind == null || kind.trim().isEmpty()) {
+            kind = TreeLineParser.kindOf(name);
+            if (kind == null) kind = "unknown";
+        }
+        Book book = repository.add(name, kind);
+        if (book == null) {
+            sendError(exchange, 409, "书籍已存在: " + name.trim());
+            return;
+        }
+        audit("Add Book", "添加书籍: " + book.getName() + " (HTTP " + remote(exchange) + ")");
+        sendJson(exchange, 201, bookJson(book));
+    }
+
+    private void rename(HttpExchange exchange, int id) throws IOException, SQLException {
+        Map<String, String> body = readBody(exchange);
+        String name = body.get("name");
+        if (name == null || name.trim().isEmpty()) throw new BadRequest("缺少 name");
+        Book old = repository.find(id);
+        if (old == null) {
+            sendError(exchange, 404, "书籍不存在: " + id);
+            return;
+        }
+        if (!repository.rename(id, name)) {
+            sendError(exchange, 409, "已有同名书籍: " + name);
+            return;
+        }
+        audit("Edit Book", "ID: " + id + " 旧名: " + old.getName() + " -> 新名: " + name
+                + " (HTTP " + remote(exchange) + ")");
+        Book book = repository.find(id);
+        sendJson(exchange, 200, bookJson(book));
+    }
+
+    private void delete(HttpExchange exchange, int id) throws IOException, SQLException {
+        Book old = repository.find(id);
+        if (old == null || !repository.delete(id)) {
+            sendError(exchange, 404, "书籍不存在: " + id);
+            return;
+        }
+        audit("Delete Book", "删除ID: " + id + " 书名: " + old.getName() + " (HTTP " + remote(exchange) + ")");
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void audit(String action, String details) {
+        if (audit) AuditLog.log(action, details);
+    }
+
+    // ================= 请求与响应 =================
+
+    @FunctionalInterface
+    private interface BookSource {
+        void read(Consumer<Book> consumer) throws SQLException;
+    }
+
+    /**
+     * 以 JSON 数组分块写出，每读到一本书就写入缓冲区
+     */
+    private static void streamBooks(HttpExchange exchange, BookSource source) throws IOException, SQLException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 16 * 1024);
+        StringBuilder sb = new StringBuilder(256);
+        boolean[] first = {true};
+        out.write('[');
+        source.read(book -> {
+            sb.setLength(0);
+            if (!first[0]) sb.append(',');
+            first[0] = false;
+            appendBook(sb, book);
+            try {
+                out.append(sb);
+            } catch (IOException e) {
+                // 抛出后查询中止，读连接立即归还
+                throw new UncheckedIOException(e);
+            }
+        });
+        out.write(']');
+        out.flush();
+    }
+
+    private static String bookJson(Book book) {
+        StringBuilder sb = new StringBuilder(128);
+        appendBook(sb, book);
+        return sb.toString();
+    }
+
+    private static void appendBook(StringBuilder sb, Book book) {
+        sb.append("{\"id\":").append(book.getId()).append(",\"name\":");
+        LogArchiver.appendJson(sb, book.getName());
+        sb.append(",\"kind\":");
+        LogArchiver.appendJson(sb, book.getKind());
+        sb.append('}');
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        // 流式输出已经开始时无法再改状态码，只能中断连接
+        if (exchange.getResponseCode() != -1) return;
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        LogArchiver.appendJson(sb, message);
+        sendJson(exchange, status, sb.append('}').toString());
+    }
+
+    private static void methodNotAllowed(HttpExchange exchange, String allowed) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        sendError(exchange, 405, "不支持的方法: " + exchange.getRequestMethod());
+    }
+
+    private static String remote(HttpExchange exchange) {
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequest("参数编码错误: " + pair);
+            }
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequest(name + " 不是整数: " + value);
+        }
+    }
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) throw new BadRequest("请求体过大");
+        return new JsonObjectParser(new String(bytes, StandardCharsets.UTF_8)).parse();
+    }
+
+    /**
+     * 请求参数或请求体不合法（返回 400）
+     */
+    private static final class BadRequest extends RuntimeException {
+        BadRequest(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 只解析一层的 JSON 对象：字符串值原样保留，数字/true/false 转为字符串，null 视为缺省
+     */
+    private static final class JsonObjectParser {
+        private final String text;
+        private int pos;
+
+        JsonObjectParser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> parse() {
+            Map<String, String> result = new HashMap<>();
+            expect('{');
+            skipSpaces();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipSpaces();
+                    String key = string();
+                    expect(':');
+                    skipSpaces();
+                    String value = peek() == '"' ? string() : literal();
+                    if (value != null) result.put(key, value);
+                    skipSpaces();
+                    char c = next();
+                    if (c == '}') break;
+                    if (c != ',') throw error();
+                }
+            }
+            skipSpaces();
+            if (pos != text.length()) throw error();
+            return result;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                c = next();
+                switch (c) {
+                    case '"': case '\\': case '/': sb.append(c); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) throw error();
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error();
+                        }
+                        pos += 4;
+                        break;
+                    default: throw error();
+                }
+            }
+        }
+
+        private String literal() {
+            int start = pos;
+            while (pos < text.length() && "{}[],:\" \t\r\n".indexOf(text.charAt(pos)) < 0) pos++;
+            String value = text.substring(start, pos);
+            if (value.isEmpty()) throw error();
+            return value.equals("null") ? null : value;
+        }
+
+        private void expect(char expected) {
+            skipSpaces();
+            if (next() != expected) throw error();
+        }
+
+        private char peek() {
+            if (pos >= text.length()) throw error();
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        private BadRequest error() {
+            return new BadRequest("请求体不是合法的 JSON 对象（位置 " + pos + "）");
+        }
+    }
+}
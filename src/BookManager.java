@@ -3,8 +3,8 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Vector;
 
 /**
@@ -15,20 +15,61 @@ public class BookManager extends JFrame {
 
     // 书籍表格组件
     private JTable bookTable;
-    private DefaultTableModel tableModel;
+    private BookTableModel tableModel;
     private JTextField searchField;
-    private final String[] columnNames = {"ID", "书名 (Title)", "类型 (Type)"};
+    // 类型筛选：空字符串表示全部类型，显示文字带各类型的书籍数量
+    private JComboBox<String> kindCombo;
+    private JCheckBox fuzzyCheck;
+    private java.util.Map<String, Integer> kindCounts = java.util.Collections.emptyMap();
+    private boolean updatingKinds;
+    // 连续的变更通知（如导入时每批一次）合并为一次计数刷新
+    private Timer kindCountsTimer;
+    private static final int KIND_COUNTS_DELAY_MILLIS = 300;
+    private JLabel statusLabel;
+    // 配置了多个书库时多一列书库名（搜索结果来自所有书库）
+    private final String[] columnNames = CatalogShards.isSharded()
+            ? new String[]{"ID", "书名 (Title)", "类型 (Type)", "书库 (Library)"}
+            : new String[]{"ID", "书名 (Title)", "类型 (Type)"};
 
     // 日志表格组件
     private JTable logTable;
     private DefaultTableModel logModel;
     private final String[] logColumns = {"ID", "时间 (Time)", "操作 (Action)", "详情 (Details)"};
+    private static final int LOG_PAGE_SIZE = 100;
+    // 日志分页：当前页的键集锚点（只显示 ID 小于它的日志）和之前各页的锚点
+    private int logPageBefore = Integer.MAX_VALUE;
+    private final Deque<Integer> logPageHistory = new ArrayDeque<>();
+    private int logPageLastId;
+    private JButton btnPrevLog;
+    private JButton btnNextLog;
+    private JLabel logPageLabel;
+
+    // 性能统计表格
+    private DefaultTableModel statsModel;
+    private JLabel cacheLabel;
+    private final String[] statsColumns = {"操作 (Operation)", "次数", "出错", "行数", "平均 ms", "p50 ms", "p90 ms", "p99 ms", "最大 ms"};
+    private static final int STATS_REFRESH_MILLIS = 2000;
+
+    // 界面刷新路径的耗时：从发起到数据显示在表格中（含后台查询和排队）
+    private static final Metrics.Timer UI_SEARCH = Metrics.timer("BookManager.search");
+    private static final Metrics.Timer UI_LIVE_SEARCH = Metrics.timer("BookManager.liveSearch");
+    private static final Metrics.Timer UI_REFRESH_LOGS = Metrics.timer("BookManager.refreshLogs");
+    // 只计日志表格 setDataVector 在 EDT 上的耗时
+    private static final Metrics.Timer UI_LOGS_SET_DATA = Metrics.timer("BookManager.logs.setDataVector");
 
     public BookManager() {
         initUI();
         // 程序启动时自动加载数据
         refreshTableData(null);
+        refreshKindCounts();
+        kindCountsTimer = new Timer(KIND_COUNTS_DELAY_MILLIS, e -> refreshKindCounts());
+        kindCountsTimer.setRepeats(false);
+        BookEvents.addListener(change -> SwingUtilities.invokeLater(kindCountsTimer::restart));
         refreshLogs(); // 预加载日志
+        // 每批日志写入后刷新日志表格（只在显示最新一页时）
+        AuditLog.addFlushListener(() -> SwingUtilities.invokeLater(() -> {
+            if (logPageHistory.isEmpty()) refreshLogs();
+        }));
     }
 
     /**
@@ -44,8 +85,14 @@ public class BookManager extends JFrame {
         JTabbedPane tabbedPane = new JTabbedPane();
         tabbedPane.addTab("  书籍管理 (Books)  ", createBookManagerPanel());
         tabbedPane.addTab("  系统日志 (Logs)  ", createLogPanel());
+        tabbedPane.addTab("  性能统计 (Stats)  ", createStatsPanel());
 
         add(tabbedPane);
+
+        // 2. 底部状态栏
+        statusLabel = new JLabel(" 就绪");
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(3, 8, 3, 8));
+        add(statusLabel, BorderLayout.SOUTH);
     }
 
     /**
@@ -58,25 +105,31 @@ public class BookManager extends JFrame {
         JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
 
         JButton btnImport = new JButton("导入索引文件");
+        JButton btnSync = new JButton("同步书库目录");
         JButton btnAdd = new JButton("添加书籍");
         JButton btnEdit = new JButton("编辑书籍");
         JButton btnDelete = new JButton("删除书籍");
         JButton btnClear = new JButton("清空数据库");
+        JButton btnSnapshots = new JButton("数据库快照");
         JButton btnRefresh = new JButton("刷新");
 
         // 绑定事件
         btnImport.addActionListener(e -> importAction());
+        btnSync.addActionListener(e -> syncAction());
         btnAdd.addActionListener(e -> addAction());
         btnEdit.addActionListener(e -> editAction());
         btnDelete.addActionListener(e -> deleteAction());
         btnClear.addActionListener(e -> clearAction());
+        btnSnapshots.addActionListener(e -> snapshotAction());
         btnRefresh.addActionListener(e -> refreshTableData(null));
 
         toolbar.add(btnImport);
+        toolbar.add(btnSync);
         toolbar.add(btnAdd);
         toolbar.add(btnEdit);
         toolbar.add(btnDelete);
         toolbar.add(btnClear);
+        toolbar.add(btnSnapshots);
         toolbar.add(btnRefresh);
 
         mainPanel.add(toolbar, BorderLayout.NORTH);
@@ -86,17 +139,30 @@ public class BookManager extends JFrame {
         splitPane.setDividerLocation(900);
         splitPane.setResizeWeight(0.8);
 
-        // 左侧：数据表格
-        tableModel = new DefaultTableModel(null, columnNames) {
-            @Override
-            public boolean isCellEditable(int row, int column) { return false; } // 禁止双击编辑
-        };
+        // 左侧：数据表格（分页模型，只加载可见的行）
+        tableModel = new BookTableModel(columnNames);
         bookTable = new JTable(tableModel);
         bookTable.setRowHeight(25);
         bookTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        bookTable.getColumnModel().getColumn(0).setPreferredWidth(60);
+        bookTable.getColumnModel().getColumn(1).setPreferredWidth(600);
 
         JScrollPane scrollPane = new JScrollPane(bookTable);
 
+        // 数据层变更直接转换为表格的增量更新
+        BookEvents.addListener(tableModel::booksChanged);
+        // 在可见区域上方插入/删除行时同步移动视口，保持用户看到的内容不动
+        tableModel.addTableModelListener(e -> {
+            if (e.getType() == javax.swing.event.TableModelEvent.UPDATE || e.getFirstRow() < 0) return;
+            int count = e.getLastRow() - e.getFirstRow() + 1;
+            int delta = (e.getType() == javax.swing.event.TableModelEvent.INSERT ? count : -count) * bookTable.getRowHeight();
+            JViewport viewport = scrollPane.getViewport();
+            Point position = viewport.getViewPosition();
+            if (position.y > 0 && e.getFirstRow() * bookTable.getRowHeight() < position.y) {
+                SwingUtilities.invokeLater(() -> viewport.setViewPosition(new Point(position.x, Math.max(0, position.y + delta))));
+            }
+        });
+
         // --- 右键菜单配置 ---
         JPopupMenu popupMenu = new JPopupMenu();
         JMenuItem editMenuItem = new JMenuItem("修改书名");
@@ -151,17 +217,52 @@ public class BookManager extends JFrame {
         searchField = new JTextField(15);
         panel.add(searchField, gbc);
 
+        // 开启内存索引时，每次按键即时过滤
+        if (BookSearchIndex.isEnabled()) {
+            searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+                @Override
+                public void insertUpdate(javax.swing.event.DocumentEvent e) { liveSearch(); }
+                @Override
+                public void removeUpdate(javax.swing.event.DocumentEvent e) { liveSearch(); }
+                @Override
+                public void changedUpdate(javax.swing.event.DocumentEvent e) { liveSearch(); }
+            });
+        }
+
         gbc.gridy = 2;
+        panel.add(new JLabel("类型:"), gbc);
+
+        gbc.gridy = 3;
+        kindCombo = new JComboBox<>(new String[]{""});
+        kindCombo.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, kindLabel((String) value), index, isSelected, cellHasFocus);
+            }
+        });
+        // 切换类型后按当前关键字重新查询（关键字为空时分页浏览该类型）
+        kindCombo.addActionListener(e -> {
+            if (!updatingKinds) refreshTableData(searchField.getText().trim());
+        });
+        panel.add(kindCombo, gbc);
+
+        gbc.gridy = 4;
+        // 按拼音首字母 / 全拼查找，容忍一两个错字
+        fuzzyCheck = new JCheckBox("模糊 / 拼音");
+        panel.add(fuzzyCheck, gbc);
+
+        gbc.gridy = 5;
         JButton btnSearch = new JButton("搜索");
         btnSearch.addActionListener(e -> {
             String keyword = searchField.getText().trim();
             refreshTableData(keyword);
-            appendLog("Search", "关键字: " + keyword); // 记录搜索日志
+            appendLog("Search", "关键字: " + keyword + (fuzzyCheck.isSelected() ? " (模糊)" : "")); // 记录搜索日志
         });
         panel.add(btnSearch, gbc);
 
         // 占位填充
-        gbc.gridy = 3; gbc.weighty = 1.0;
+        gbc.gridy = 6; gbc.weighty = 1.0;
         panel.add(new JLabel(""), gbc);
 
         return panel;
@@ -170,53 +271,186 @@ public class BookManager extends JFrame {
     // ================= 业务逻辑方法 =================
 
     /**
-     * 异步刷新表格数据
-     * @param keyword 搜索关键字，若为 null 则查询所有
+     * 异步刷新表格数据（按当前选中的类型筛选）
+     * @param keyword 搜索关键字，若为 null 则分页浏览所有书籍
      */
     private void refreshTableData(String keyword) {
+        String kind = selectedKind();
+        if (keyword == null || keyword.isEmpty()) {
+            tableModel.showAll(kind);
+            return;
+        }
+        boolean fuzzy = fuzzyCheck.isSelected();
+        long t0 = UI_SEARCH.start();
         new SwingWorker<Vector<Vector<Object>>, Void>() {
             @Override
             protected Vector<Vector<Object>> doInBackground() {
-                if (keyword == null || keyword.isEmpty()) {
-                    return QueryDB.getAllBooks();
-                } else {
-                    return QueryDB.searchBooks(keyword);
+                return fuzzy ? QueryDB.fuzzySearchBooks(keyword, kind) : QueryDB.searchBooks(keyword, kind);
+            }
+            @Override
+            protected void done() {
+                try {
+                    Vector<Vector<Object>> data = get();
+                    tableModel.showRows(data);
+                    UI_SEARCH.stop(t0, data.size());
+                } catch (Exception e) {
+                    UI_SEARCH.fail(t0);
+                    e.printStackTrace();
                 }
             }
+        }.execute();
+    }
+
+    /**
+     * 按搜索框内容即时过滤（仅在内存索引就绪时生效，直接在 EDT 上执行；模糊搜索需点击“搜索”）
+     */
+    private void liveSearch() {
+        if (!BookSearchIndex.isReady() || fuzzyCheck.isSelected()) return;
+        String keyword = searchField.getText().trim();
+        if (keyword.isEmpty()) {
+            refreshTableData(null);
+        } else {
+            long t0 = UI_LIVE_SEARCH.start();
+            Vector<Vector<Object>> data = BookSearchIndex.search(keyword);
+            String kind = selectedKind();
+            if (kind != null) data.removeIf(row -> !kind.equals(row.get(2)));
+            tableModel.showRows(data);
+            UI_LIVE_SEARCH.stop(t0, data.size());
+        }
+    }
+
+    /**
+     * 当前选中的类型，选择“全部类型”时返回 null
+     */
+    private String selectedKind() {
+        String kind = (String) kindCombo.getSelectedItem();
+        return kind == null || kind.isEmpty() ? null : kind;
+    }
+
+    private String kindLabel(String kind) {
+        if (kind == null || kind.isEmpty()) {
+            int total = 0;
+            for (int n : kindCounts.values()) total += n;
+            return "全部类型 (" + total + ")";
+        }
+        return kind + " (" + kindCounts.getOrDefault(kind, 0) + ")";
+    }
+
+    /**
+     * 重新读取各类型的书籍数量（读取计数表，只有几行），保留当前选中的类型
+     */
+    private void refreshKindCounts() {
+        new SwingWorker<java.util.Map<String, Integer>, Void>() {
+            @Override
+            protected java.util.Map<String, Integer> doInBackground() {
+                return QueryDB.getKindCounts();
+            }
             @Override
             protected void done() {
                 try {
-                    tableModel.setDataVector(get(), new Vector<>(java.util.Arrays.asList(columnNames)));
-                    // 重置列宽
-                    bookTable.getColumnModel().getColumn(0).setPreferredWidth(60);
-                    bookTable.getColumnModel().getColumn(1).setPreferredWidth(600);
+                    kindCounts = get();
+                    String selected = selectedKind();
+                    updatingKinds = true;
+                    DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>();
+                    model.addElement("");
+                    for (String kind : kindCounts.keySet()) model.addElement(kind);
+                    // 已经没有书的类型仍保留在选中状态，直到用户切换
+                    if (selected != null && !kindCounts.containsKey(selected)) model.addElement(selected);
+                    model.setSelectedItem(selected == null ? "" : selected);
+                    kindCombo.setModel(model);
                 } catch (Exception e) {
                     e.printStackTrace();
+                } finally {
+                    updatingKinds = false;
                 }
             }
         }.execute();
     }
 
     /**
-     * 导入文件操作
+     * 导入文件操作（可多选文件，或选择包含索引文件的文件夹）
      */
     private void importAction() {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileFilter(new FileNameExtensionFilter("文本索引文件 (*.txt)", "txt"));
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setMultiSelectionEnabled(true);
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File file = chooser.getSelectedFile();
-            new SwingWorker<Void, Void>() {
+            File[] files = chooser.getSelectedFiles();
+            java.util.List<java.nio.file.Path> paths = new java.util.ArrayList<>();
+            for (File f : files) paths.add(f.toPath());
+            String shard = chooseImportShard();
+            if (shard == null) return;
+            String names = (files.length == 1 ? files[0].getName() : files.length + " 个文件/文件夹")
+                    + (CatalogShards.MAIN.equals(shard) ? "" : " -> 书库 " + shard);
+
+            new SwingWorker<Long, Long>() {
                 @Override
-                protected Void doInBackground() throws Exception {
-                    // 调用修改后的方法（不会清空旧数据）
-                    SetUpDB.importBooksFromFile(file.getAbsolutePath());
-                    return null;
+                protected Long doInBackground() throws Exception {
+                    // 并行解析、单线程写库（不会清空旧数据），每写入一批汇报一次进度
+                    return SetUpDB.importBooksFromFiles(shard, paths, (lines, books) -> publish(lines));
+                }
+                @Override
+                protected void process(java.util.List<Long> chunks) {
+                    statusLabel.setText(" 正在导入 " + names + "：已读取 " + chunks.get(chunks.size() - 1) + " 行");
                 }
                 @Override
                 protected void done() {
-                    JOptionPane.showMessageDialog(null, "索引导入完成！");
-                    refreshTableData(null);
-                    appendLog("Import", "导入文件: " + file.getName());
+                    try {
+                        long count = get();
+                        statusLabel.setText(" 导入完成：" + names + "，新增 " + count + " 本");
+                        JOptionPane.showMessageDialog(null, "索引导入完成！新增 " + count + " 本");
+                        appendLog("Import", "导入文件: " + names + " (新增 " + count + " 本)");
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        statusLabel.setText(" 导入失败：" + names);
+                        JOptionPane.showMessageDialog(null, "导入失败：" + e.getCause().getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                    }
+                    // 新书已通过变更通知逐批加入表格（其他书库的新书在搜索时才会出现）
+                }
+            }.execute();
+        }
+    }
+
+    /**
+     * 配置了多个书库时选择导入到哪个书库，默认为 import.shard
+     * @return 书库名，取消时返回 null
+     */
+    private String chooseImportShard() {
+        if (!CatalogShards.isSharded()) return CatalogShards.MAIN;
+        java.util.List<CatalogShards.Shard> shards = CatalogShards.shards();
+        String[] names = new String[shards.size()];
+        for (int i = 0; i < names.length; i++) names[i] = shards.get(i).getName();
+        return (String) JOptionPane.showInputDialog(this, "导入到书库:", "选择书库",
+                JOptionPane.QUESTION_MESSAGE, null, names, CatalogShards.importTarget());
+    }
+
+    /**
+     * 同步书库目录操作：扫描所选目录中的书籍文件，之后自动跟踪目录中的变化
+     */
+    private void syncAction() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            java.nio.file.Path dir = chooser.getSelectedFile().toPath();
+            statusLabel.setText(" 正在扫描 " + dir + " ...");
+
+            new SwingWorker<Long, Void>() {
+                @Override
+                protected Long doInBackground() throws Exception {
+                    return LibrarySync.getDefault().addRoot(dir);
+                }
+                @Override
+                protected void done() {
+                    try {
+                        long count = get();
+                        statusLabel.setText(" 正在同步 " + dir + "（首次扫描新增 " + count + " 本）");
+                        appendLog("Sync", "同步目录: " + dir + " (新增 " + count + " 本)");
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        statusLabel.setText(" 同步失败：" + dir);
+                        JOptionPane.showMessageDialog(null, "同步失败：" + e.getCause().getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                    }
                 }
             }.execute();
         }
@@ -278,10 +512,9 @@ public class BookManager extends JFrame {
                         if (get()) {
                             JOptionPane.showMessageDialog(dialog, "书籍添加成功！");
                             dialog.dispose();
-                            refreshTableData(null);
                             appendLog("Add Book", "添加书籍: " + name);
                         } else {
-                            JOptionPane.showMessageDialog(dialog, "添加失败。", "错误", JOptionPane.ERROR_MESSAGE);
+                            JOptionPane.showMessageDialog(dialog, "添加失败，可能已存在同名书籍。", "错误", JOptionPane.ERROR_MESSAGE);
                             btnOK.setEnabled(true);
                         }
                     } catch (Exception ex) { ex.printStackTrace(); }
@@ -308,14 +541,18 @@ public class BookManager extends JFrame {
             return;
         }
 
-        int id = (int) tableModel.getValueAt(row, 0);
-        String oldName = (String) tableModel.getValueAt(row, 1);
+        Integer id = tableModel.getBookId(row);
+        if (id == null) return; // 该行尚未加载
+        String shard = tableModel.getShard(row);
+        String oldName = String.valueOf(tableModel.getValueAt(row, 1));
 
         String newName = JOptionPane.showInputDialog(this, "修改书名:", oldName);
         if (newName != null && !newName.trim().isEmpty() && !newName.equals(oldName)) {
-            if (QueryDB.updateBook(id, newName)) {
-                refreshTableData(null);
-                appendLog("Edit Book", "ID: " + id + " 旧名: " + oldName + " -> 新名: " + newName);
+            if (QueryDB.updateBook(shard, id, newName)) {
+                appendLog("Edit Book", shardLabel(shard) + "ID: " + id + " 旧名: " + oldName + " -> 新名: " + newName);
+                refreshIfOtherShard(shard);
+            } else {
+                JOptionPane.showMessageDialog(this, "修改失败，可能已存在同名书籍");
             }
         }
     }
@@ -330,25 +567,190 @@ public class BookManager extends JFrame {
             return;
         }
 
-        int id = (int) tableModel.getValueAt(row, 0);
-        String name = (String) tableModel.getValueAt(row, 1);
+        Integer id = tableModel.getBookId(row);
+        if (id == null) return; // 该行尚未加载
+        String shard = tableModel.getShard(row);
+        String name = String.valueOf(tableModel.getValueAt(row, 1));
 
         if (JOptionPane.showConfirmDialog(this, "确定删除该记录？\n" + name) == JOptionPane.YES_OPTION) {
-            if (QueryDB.deleteBook(id)) {
-                refreshTableData(null);
-                appendLog("Delete Book", "删除ID: " + id + " 书名: " + name);
+            if (QueryDB.deleteBook(shard, id)) {
+                appendLog("Delete Book", shardLabel(shard) + "删除ID: " + id + " 书名: " + name);
+                refreshIfOtherShard(shard);
             }
         }
     }
 
+    private static String shardLabel(String shard) {
+        return CatalogShards.MAIN.equals(shard) ? "" : "书库: " + shard + " ";
+    }
+
+    /**
+     * 其他书库的修改没有变更通知，重新搜索以显示结果
+     */
+    private void refreshIfOtherShard(String shard) {
+        if (!CatalogShards.MAIN.equals(shard)) refreshTableData(searchField.getText().trim());
+    }
+
     /**
-     * 清空数据库操作
+     * 清空数据库操作（清空前自动创建快照）
      */
     private void clearAction() {
-        if (JOptionPane.showConfirmDialog(this, "警告：确定清空所有数据？此操作不可恢复！", "警告", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
-            QueryDB.clearAllBooks();
-            refreshTableData(null);
-            appendLog("Clear DB", "清空所有书籍数据");
+        if (JOptionPane.showConfirmDialog(this, "警告：确定清空所有数据？\n清空前会自动创建快照，可在“数据库快照”中恢复。", "警告", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+            new SwingWorker<Boolean, Void>() {
+                @Override
+                protected Boolean doInBackground() {
+                    return QueryDB.clearAllBooks();
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        if (get()) {
+                            appendLog("Clear DB", "清空所有书籍数据");
+                        } else {
+                            JOptionPane.showMessageDialog(BookManager.this, "清空失败（创建快照失败时不会清空），详见控制台输出。", "错误", JOptionPane.ERROR_MESSAGE);
+                        }
+                    } catch (Exception ex) { ex.printStackTrace(); }
+                }
+            }.execute();
+        }
+    }
+
+    /**
+     * 数据库快照管理：创建、恢复、删除
+     */
+    private void snapshotAction() {
+        JDialog dialog = new JDialog(this, "数据库快照 (" + Snapshots.directory().toAbsolutePath() + ")", true);
+        dialog.setLayout(new BorderLayout());
+
+        String[] columns = {"时间", "来源", "大小 (MB)", "文件"};
+        DefaultTableModel model = new DefaultTableModel(null, columns) {
+            @Override
+            public boolean isCellEditable(int row, int column) { return false; }
+        };
+        JTable table = new JTable(model);
+        table.setRowHeight(25);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        java.util.List<Snapshots.Snapshot> snapshots = new java.util.ArrayList<>();
+        Runnable reload = () -> {
+            snapshots.clear();
+            model.setRowCount(0);
+            try {
+                snapshots.addAll(Snapshots.list());
+            } catch (java.io.IOException ex) { ex.printStackTrace(); }
+            for (Snapshots.Snapshot snapshot : snapshots) {
+                model.addRow(new Object[]{
+                        snapshot.getTime().toString().replace('T', ' '),
+                        snapshotReason(snapshot.getReason()),
+                        String.format("%.1f", snapshot.getBytes() / 1048576.0),
+                        snapshot.getPath().getFileName().toString()});
+            }
+        };
+        reload.run();
+        dialog.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
+        JButton btnCreate = new JButton("创建快照");
+        JButton btnRestore = new JButton("恢复所选");
+        JButton btnDelete = new JButton("删除所选");
+        JButton btnClose = new JButton("关闭");
+        JLabel progressLabel = new JLabel();
+        buttonPanel.add(progressLabel);
+        buttonPanel.add(btnCreate);
+        buttonPanel.add(btnRestore);
+        buttonPanel.add(btnDelete);
+        buttonPanel.add(btnClose);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+
+        btnClose.addActionListener(e -> dialog.dispose());
+
+        btnCreate.addActionListener(e -> {
+            btnCreate.setEnabled(false);
+            progressLabel.setText("正在创建快照...");
+            new SwingWorker<Snapshots.Snapshot, Void>() {
+                @Override
+                protected Snapshots.Snapshot doInBackground() throws Exception {
+                    return Snapshots.take(Snapshots.MANUAL);
+                }
+
+                @Override
+                protected void done() {
+                    btnCreate.setEnabled(true);
+                    progressLabel.setText("");
+                    try {
+                        Snapshots.Snapshot snapshot = get();
+                        appendLog("Snapshot", "创建快照: " + snapshot.getPath().getFileName());
+                        reload.run();
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        JOptionPane.showMessageDialog(dialog, "创建快照失败：" + ex.getCause().getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        });
+
+        btnRestore.addActionListener(e -> {
+            int row = table.getSelectedRow();
+            if (row == -1) {
+                JOptionPane.showMessageDialog(dialog, "请先选择一个快照！");
+                return;
+            }
+            Snapshots.Snapshot snapshot = snapshots.get(row);
+            if (JOptionPane.showConfirmDialog(dialog, "用快照 " + snapshot.getPath().getFileName() + " 替换当前数据库？\n当前数据会先保存为“恢复前”快照。",
+                    "恢复快照", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) return;
+            btnRestore.setEnabled(false);
+            progressLabel.setText("正在恢复...");
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws Exception {
+                    Snapshots.restore(snapshot.getPath());
+                    return null;
+                }
+
+                @Override
+                protected void done() {
+                    btnRestore.setEnabled(true);
+                    progressLabel.setText("");
+                    try {
+                        get();
+                        appendLog("Restore", "从快照恢复: " + snapshot.getPath().getFileName());
+                        reload.run();
+                        JOptionPane.showMessageDialog(dialog, "已恢复。");
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                        JOptionPane.showMessageDialog(dialog, "恢复失败：" + ex.getCause().getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        });
+
+        btnDelete.addActionListener(e -> {
+            int row = table.getSelectedRow();
+            if (row == -1) return;
+            Snapshots.Snapshot snapshot = snapshots.get(row);
+            if (JOptionPane.showConfirmDialog(dialog, "删除快照 " + snapshot.getPath().getFileName() + "？",
+                    "删除快照", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) return;
+            try {
+                Snapshots.delete(snapshot);
+            } catch (java.io.IOException ex) {
+                JOptionPane.showMessageDialog(dialog, "删除失败：" + ex.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+            }
+            reload.run();
+        });
+
+        dialog.setSize(760, 400);
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    private static String snapshotReason(String reason) {
+        switch (reason) {
+            case Snapshots.MANUAL: return "手动";
+            case Snapshots.SCHEDULED: return "定时";
+            case Snapshots.BEFORE_CLEAR: return "清空前";
+            case Snapshots.BEFORE_IMPORT: return "导入前";
+            case Snapshots.BEFORE_RESTORE: return "恢复前";
+            default: return reason;
         }
     }
 
@@ -364,10 +766,16 @@ public class BookManager extends JFrame {
         JButton btnRefreshLog = new JButton("刷新日志");
         JButton btnDeleteLog = new JButton("删除选中日志");
         JButton btnClearLog = new JButton("清空所有日志");
+        btnPrevLog = new JButton("上一页");
+        btnNextLog = new JButton("下一页");
+        logPageLabel = new JLabel();
 
         toolbar.add(btnRefreshLog);
         toolbar.add(btnDeleteLog);
         toolbar.add(btnClearLog);
+        toolbar.add(btnPrevLog);
+        toolbar.add(btnNextLog);
+        toolbar.add(logPageLabel);
         panel.add(toolbar, BorderLayout.NORTH);
 
         logModel = new DefaultTableModel(null, logColumns) {
@@ -386,7 +794,24 @@ public class BookManager extends JFrame {
         panel.add(scrollPane, BorderLayout.CENTER);
 
         // 按钮逻辑
-        btnRefreshLog.addActionListener(e -> refreshLogs());
+        btnRefreshLog.addActionListener(e -> {
+            // 回到最新一页
+            logPageHistory.clear();
+            logPageBefore = Integer.MAX_VALUE;
+            refreshLogs();
+        });
+
+        btnPrevLog.addActionListener(e -> {
+            if (logPageHistory.isEmpty()) return;
+            logPageBefore = logPageHistory.pop();
+            refreshLogs();
+        });
+
+        btnNextLog.addActionListener(e -> {
+            logPageHistory.push(logPageBefore);
+            logPageBefore = logPageLastId;
+            refreshLogs();
+        });
 
         btnDeleteLog.addActionListener(e -> {
             int row = logTable.getSelectedRow();
@@ -400,6 +825,8 @@ public class BookManager extends JFrame {
         btnClearLog.addActionListener(e -> {
             if (JOptionPane.showConfirmDialog(this, "确定清空所有日志？") == JOptionPane.YES_OPTION) {
                 QueryDB.clearLogs();
+                logPageHistory.clear();
+                logPageBefore = Integer.MAX_VALUE;
                 refreshLogs();
             }
         });
@@ -408,53 +835,159 @@ public class BookManager extends JFrame {
     }
 
     /**
-     * 写入日志并自动刷新显示
+     * 记录日志（由 AuditLog 后台批量写入，写入后刷新日志表格）
      */
     private void appendLog(String action, String details) {
-        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
-
-        new SwingWorker<Void, Void>() {
-            @Override
-            protected Void doInBackground() {
-                QueryDB.addLog(time, action, details);
-                return null;
-            }
-            @Override
-            protected void done() {
-                refreshLogs();
-            }
-        }.execute();
+        AuditLog.log(action, details);
     }
 
     /**
-     * 刷新日志表格数据
+     * 刷新日志表格当前页（每页 LOG_PAGE_SIZE 条，按 ID 倒序键集分页）
      */
     private void refreshLogs() {
+        int before = logPageBefore;
+        long t0 = UI_REFRESH_LOGS.start();
         new SwingWorker<Vector<Vector<Object>>, Void>() {
+            private int total;
+
             @Override
             protected Vector<Vector<Object>> doInBackground() {
-                return QueryDB.getAllLogs();
+                total = QueryDB.countLogs();
+                // 多取一条用于判断是否还有下一页
+                return QueryDB.getLogsPage(before, LOG_PAGE_SIZE + 1);
             }
             @Override
             protected void done() {
+                if (before != logPageBefore) return; // 翻页期间又切换了页面
                 try {
-                    logModel.setDataVector(get(), new Vector<>(java.util.Arrays.asList(logColumns)));
+                    long t1 = UI_LOGS_SET_DATA.start();
+                    Vector<Vector<Object>> data = get();
+                    boolean hasNext = data.size() > LOG_PAGE_SIZE;
+                    if (hasNext) data.setSize(LOG_PAGE_SIZE);
+                    logPageLastId = data.isEmpty() ? before : (Integer) data.lastElement().get(0);
+                    btnPrevLog.setEnabled(!logPageHistory.isEmpty());
+                    btnNextLog.setEnabled(hasNext);
+                    logPageLabel.setText("第 " + (logPageHistory.size() + 1) + " 页，共 " + total + " 条");
+
+                    logModel.setDataVector(data, new Vector<>(java.util.Arrays.asList(logColumns)));
                     // 刷新数据后列宽会重置，需重新设置
                     logTable.getColumnModel().getColumn(0).setPreferredWidth(50);
                     logTable.getColumnModel().getColumn(1).setPreferredWidth(150);
                     logTable.getColumnModel().getColumn(2).setPreferredWidth(100);
                     logTable.getColumnModel().getColumn(3).setPreferredWidth(500);
-                } catch (Exception e) { e.printStackTrace(); }
+                    UI_LOGS_SET_DATA.stop(t1, data.size());
+                    UI_REFRESH_LOGS.stop(t0, data.size());
+                } catch (Exception e) {
+                    UI_REFRESH_LOGS.fail(t0);
+                    e.printStackTrace();
+                }
             }
         }.execute();
     }
 
+    /**
+     * 创建性能统计面板（每个操作的调用次数、行数、出错次数和延迟分位数）
+     */
+    private JPanel createStatsPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        JButton btnRefreshStats = new JButton("刷新");
+        JButton btnResetStats = new JButton("重置");
+        JButton btnExportJson = new JButton("导出 JSON");
+        JButton btnExportProm = new JButton("导出 Prometheus");
+        toolbar.add(btnRefreshStats);
+        toolbar.add(btnResetStats);
+        toolbar.add(btnExportJson);
+        toolbar.add(btnExportProm);
+        cacheLabel = new JLabel();
+        toolbar.add(cacheLabel);
+        if (!Metrics.isEnabled()) toolbar.add(new JLabel("统计已关闭 (metrics.enabled=false)"));
+        panel.add(toolbar, BorderLayout.NORTH);
+
+        statsModel = new DefaultTableModel(null, statsColumns) {
+            @Override
+            public boolean isCellEditable(int row, int column) { return false; }
+        };
+        JTable statsTable = new JTable(statsModel);
+        statsTable.setRowHeight(25);
+        statsTable.getColumnModel().getColumn(0).setPreferredWidth(300);
+        panel.add(new JScrollPane(statsTable), BorderLayout.CENTER);
+
+        btnRefreshStats.addActionListener(e -> refreshStats());
+        btnResetStats.addActionListener(e -> {
+            Metrics.reset();
+            refreshStats();
+        });
+        btnExportJson.addActionListener(e -> exportStats("metrics.json", Metrics.toJson()));
+        btnExportProm.addActionListener(e -> exportStats("metrics.prom", Metrics.toPrometheus()));
+
+        // 选项卡可见时定期刷新
+        new Timer(STATS_REFRESH_MILLIS, e -> {
+            if (panel.isShowing()) refreshStats();
+        }).start();
+        return panel;
+    }
+
+    private void refreshStats() {
+        Vector<Vector<Object>> data = new Vector<>();
+        for (Metrics.Snapshot s : Metrics.snapshot()) {
+            Vector<Object> row = new Vector<>();
+            row.add(s.name);
+            row.add(s.count);
+            row.add(s.errors);
+            row.add(s.rows);
+            row.add(Metrics.millis(s.meanNanos()));
+            row.add(Metrics.millis(s.p50));
+            row.add(Metrics.millis(s.p90));
+            row.add(Metrics.millis(s.p99));
+            row.add(Metrics.millis(s.maxNanos));
+            data.add(row);
+        }
+        statsModel.setDataVector(data, new Vector<>(java.util.Arrays.asList(statsColumns)));
+
+        if (SearchCache.isEnabled()) {
+            long hits = SearchCache.hits();
+            long lookups = hits + SearchCache.misses();
+            cacheLabel.setText(String.format("搜索缓存: 命中率 %.1f%% (%d/%d)，%d 条 / %d 行",
+                    lookups == 0 ? 0.0 : hits * 100.0 / lookups, hits, lookups, SearchCache.size(), SearchCache.rows()));
+        } else {
+            cacheLabel.setText("搜索缓存已关闭");
+        }
+    }
+
+    private void exportStats(String defaultName, String content) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(defaultName));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File file = chooser.getSelectedFile();
+        try {
+            java.nio.file.Files.write(file.toPath(), content.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            statusLabel.setText(" 已导出统计: " + file.getAbsolutePath());
+        } catch (java.io.IOException ex) {
+            JOptionPane.showMessageDialog(this, "导出失败：" + ex.getMessage(), "错误", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     public static void main(String[] args) {
         try {
             // 设置系统原生风格 (Windows下会更好看)
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) { e.printStackTrace(); }
 
+        // 启动时执行一次数据库结构升级
+        SetUpDB.initTables();
+        // 按配置在后台构建内存搜索索引
+        BookSearchIndex.loadAsync();
+        // 按保留策略在后台归档旧日志
+        LogArchiver.start();
+        // 按配置定时创建数据库快照
+        Snapshots.start();
+        // 按配置同步书库目录
+        LibrarySync.startConfigured();
+        // 按配置启动 HTTP 查询服务
+        BookHttpServer.startConfigured();
+
         // 在安全的EDT线程中启动窗口
         SwingUtilities.invokeLater(() -> new BookManager().setVisible(true));
     }
@@ -0,0 +1,56 @@
+/**
+ * 书籍的显示路径
+ * 只引用共享的目录前缀和文件名，需要显示时才拼接成完整字符串
+ */
+public final class BookPath implements CharSequence {
+    private final String dir;
+    private final String filename;
+    private String full;
+
+    public BookPath(String dir, String filename) {
+        this.dir = dir == null ? "" : dir;
+        this.filename = filename == null ? "" : filename;
+    }
+
+    public String getDir() { return dir; }
+
+    public String getFilename() { return filename; }
+
+    @Override
+    public int length() {
+        return dir.length() + filename.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index < dir.length() ? dir.charAt(index) : filename.charAt(index - dir.length());
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String s = full;
+        if (s == null) {
+            s = dir.isEmpty() ? filename : dir + filename;
+            full = s;
+        }
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BookPath)) return false;
+        BookPath other = (BookPath) o;
+        return dir.equals(other.dir) && filename.equals(other.filename);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * dir.hashCode() + filename.hashCode();
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 书库服务接口
+ * 不依赖 Swing，可以在命令行工具或其他程序中直接使用；
+ * 出错时抛出异常而不是打印后返回空结果
+ */
+public interface BookRepository {
+
+    /**
+     * 按 ID 查找
+     * @return 不存在时返回 null
+     */
+    Book find(int id) throws SQLException;
+
+    int count() throws SQLException;
+
+    /**
+     * 搜索书名，逐条交给 consumer，不在内存中保存结果集
+     */
+    default void search(String keyword, Consumer<Book> consumer) throws SQLException {
+        search(keyword, null, consumer);
+    }
+
+    /**
+     * 搜索某一类型中的书籍
+     * @param kind 类型（如 "azw3"），为 null 时不限类型
+     */
+    void search(String keyword, String kind, Consumer<Book> consumer) throws SQLException;
+
+    default List<Book> search(String keyword) throws SQLException {
+        List<Book> books = new ArrayList<>();
+        search(keyword, books::add);
+        return books;
+    }
+
+    /**
+     * 按 ID 升序遍历全部书籍（流式读取）
+     */
+    void forEach(Consumer<Book> consumer) throws SQLException;
+
+    /**
+     * 按 ID 倒序分页（新书在前）
+     * @param beforeId 只取 ID 小于它的书籍，第一页传 Integer.MAX_VALUE
+     * @param limit 本页最多条数
+     */
+    default void page(int beforeId, int limit, Consumer<Book> consumer) throws SQLException {
+        page(beforeId, limit, null, consumer);
+    }
+
+    /**
+     * 某一类型的书籍按 ID 倒序分页
+     * @param kind 类型，为 null 时不限类型
+     */
+    void page(int beforeId, int limit, String kind, Consumer<Book> consumer) throws SQLException;
+
+    /**
+     * 各类型的书籍数量，按数量从多到少排列（不含数量为 0 的类型）
+     */
+    Map<String, Integer> kindCounts() throws SQLException;
+
+    /**
+     * 添加一本书
+     * @return 新书；同路径的书籍已存在时返回 null
+     */
+    Book add(String name, String kind) throws SQLException;
+
+    /**
+     * 修改书名（类型按新的后缀名重新识别）
+     * @return 书籍不存在或已有同名书籍时返回 false
+     */
+    boolean rename(int id, String newName) throws SQLException;
+
+    boolean delete(int id) throws SQLException;
+
+    /**
+     * 清空全部书籍、目录和导入记录
+     */
+    void clear() throws SQLException;
+
+    /**
+     * 导入索引文件（目录展开为其中所有的 .txt 文件），未变化的文件跳过
+     * @param progress 进度回调，可为 null
+     * @return 新增的书籍数量
+     */
+    long importFiles(List<Path> paths, SetUpDB.ImportProgress progress) throws IOException;
+
+    /**
+     * 从字符流导入索引内容（例如标准输入），只新增书籍，不删除
+     * @param source 来源名称，记录在导入来源表中
+     * @param progress 进度回调，可为 null
+     * @return 新增的书籍数量
+     */
+    long importStream(Reader reader, String source, SetUpDB.ImportProgress progress) throws IOException;
+
+    BookStats stats() throws SQLException;
+
+    /**
+     * 整理数据库：优化全文索引、更新查询统计并 VACUUM
+     */
+    void vacuum() throws SQLException;
+}
@@ -0,0 +1,125 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Vector;
+
+/**
+ * 可选的进程内书名搜索引擎
+ * 启动时从 books 表构建 NGramIndex，之后由 QueryDB / SetUpDB 的写操作增量维护，
+ * 搜索时不访问数据库，可以在每次按键时即时过滤
+ * 通过配置项 search.memoryIndex=true 开启
+ */
+public class BookSearchIndex {
+    private static final boolean ENABLED = AppConfig.getBoolean("search.memoryIndex", false);
+    private static final NGramIndex INDEX = new NGramIndex();
+    private static volatile boolean ready;
+    // 已从数据库读入的最大 ID，catchUp 只读取其后的新书；updated() 写入索引的书籍不推进它。由类锁保护
+    private static int loadedMaxId;
+    // 初次全量构建已完成，由类锁保护
+    private static boolean loaded;
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 索引已构建完成，可以替代 SQL 搜索
+     */
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 在后台线程中从数据库构建索引（未开启时不做任何事）
+     */
+    public static void loadAsync() {
+        if (!ENABLED) return;
+        Thread loader = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                load();
+                ready = true;
+                System.out.println("内存搜索索引构建完成: " + INDEX.size() + " 本, 耗时 "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }, "book-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * 搜索书名
+     * @return 与 QueryDB.searchBooks 相同格式的数据集，按 ID 倒序
+     */
+    public static Vector<Vector<Object>> search(String keyword) {
+        int[] ids = INDEX.search(keyword);
+        Vector<Vector<Object>> data = new Vector<>(ids.length);
+        for (int id : ids) {
+            String name = INDEX.text(id);
+            if (name == null) continue; // 校验与读取之间被删除
+            Vector<Object> row = new Vector<>(3);
+            row.add(id);
+            row.add(name);
+            row.add(INDEX.kind(id));
+            data.add(row);
+        }
+        return data;
+    }
+
+    // ================= 写操作同步 =================
+
+    /**
+     * 初次构建：读入全部书籍。在此之前由 updated() 加入的书籍不影响读取范围
+     */
+    private static synchronized void load() throws SQLException {
+        loadedMaxId = 0;
+        readAfter(0);
+        loaded = true;
+    }
+
+    /**
+     * 将上次从数据库读入之后新增的书籍加入索引（单条添加和批量导入之后调用）
+     * 初次构建完成前不做任何事，构建时会读入全部书籍
+     */
+    public static synchronized void catchUp() throws SQLException {
+        if (!ENABLED || !loaded) return;
+        readAfter(loadedMaxId);
+    }
+
+    private static void readAfter(int id) throws SQLException {
+        String sql = "SELECT " + QueryDB.BOOK_COLUMNS + " FROM books b WHERE b.id > ? ORDER BY b.id";
+        ConnectionPool pool = ConnectionPool.getDefault();
+        pool.read(conn -> {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = pool.directories().pathOf(conn, rs.getInt(2)) + rs.getString(3);
+                    INDEX.put(rs.getInt(1), name, rs.getString(4));
+                    loadedMaxId = rs.getInt(1);
+                }
+            }
+            return null;
+        });
+    }
+
+    // 以下修改在写入提交后调用，与 load / catchUp 共用类锁：读取中的快照可能早于这次修改，
+    // 必须等读取写入索引之后再应用，否则会被旧数据覆盖
+
+    public static synchronized void updated(int id, String name, String kind) {
+        if (ENABLED) INDEX.put(id, name, kind);
+    }
+
+    public static synchronized void deleted(int id) {
+        if (ENABLED) INDEX.remove(id);
+    }
+
+    public static synchronized void cleared() {
+        if (!ENABLED) return;
+        INDEX.clear();
+        // 清空后新书的 ID 可能从头开始
+        loadedMaxId = 0;
+    }
+}
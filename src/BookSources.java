@@ -0,0 +1,344 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 书籍来源的差异更新
+ * 来源是一个索引文件或一个被同步的书库目录，记录在 import_files 表中，
+ * book_sources 记录每本书来自哪些来源。
+ * <p>
+ * 完整替换一个来源时逐批与上次的内容对照：路径已存在且已关联到该来源的书籍（未变化的行）只查询不写入，
+ * 本次出现的书籍 ID 记在调用方持有的位图中（大小取决于最大书籍 ID，与来源大小无关）；
+ * 其余的行写入书籍表并关联到来源。全部处理完后在一个事务中删除只属于该来源、这次未出现的书籍，
+ * 修改一行的来源只写入变化的几行。中途退出时来源的关联只多不少，下次替换时按新内容清理。
+ * 新书籍都经写连接上的临时表 import_stage 成批写入；增量更新（监视到的少量变化）在一个事务中先移除再加入
+ */
+class BookSources {
+    // 临时表中的分组编号，多次导入/同步之间不重复
+    private static final AtomicInteger STAGE_KEYS = new AtomicInteger();
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 一次更新中新增和删除的书籍 ID（事务提交后通过 publish 通知，只有默认数据库发出通知）
+     */
+    static final class Result {
+        final List<Integer> inserted = new ArrayList<>();
+        final List<Integer> deleted = new ArrayList<>();
+        private final ConnectionPool pool;
+
+        Result(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        void publish() {
+            if (!ConnectionPool.isDefault(pool)) return;
+            if (!inserted.isEmpty()) {
+                BookEvents.fireInserted(inserted.stream().mapToInt(Integer::intValue).toArray());
+            }
+            for (int id : deleted) {
+                BookSearchIndex.deleted(id);
+                BookEvents.fireDeleted(id);
+            }
+        }
+    }
+
+    /**
+     * 分配 count 个连续的临时表分组编号，返回第一个
+     */
+    static int allocateKeys(int count) {
+        return STAGE_KEYS.getAndAdd(count);
+    }
+
+    /**
+     * 确保来源记录存在（新来源没有指纹，写入中途失败时下次不会被当作未变化而跳过）
+     * @return 来源 ID
+     */
+    static int openSource(ConnectionPool pool, String source) throws SQLException {
+        return pool.transaction(conn -> {
+            PreparedStatement insert = conn.prepare("INSERT INTO import_files(path) VALUES(?) ON CONFLICT(path) DO NOTHING");
+            insert.setString(1, source);
+            insert.executeUpdate();
+            return sourceId(conn, source);
+        });
+    }
+
+    /**
+     * 记录来源的导入时间（字符流来源没有指纹，只新增书籍）
+     */
+    static void touch(ConnectionPool pool, int sourceId) throws SQLException {
+        pool.write(conn -> {
+            PreparedStatement pstmt = conn.prepare("UPDATE import_files SET imported_at = ? WHERE id = ?");
+            pstmt.setString(1, LocalDateTime.now().format(TIME_FORMAT));
+            pstmt.setInt(2, sourceId);
+            return pstmt.executeUpdate();
+        });
+    }
+
+    /**
+     * 在一个事务中插入一批书籍（路径已存在的跳过），并把这批书籍全部关联到来源
+     * 已关联到该来源的书籍不写入；新书籍经临时表用一条 INSERT ... SELECT 写入
+     * （逐行插入时全文索引每行都要落盘），事务结束前清空，临时表中最多只有一批
+     * @param seen 完整替换时记录本次出现的书籍 ID（事务提交后写入），只新增时为 null
+     */
+    static Result insert(ConnectionPool pool, int sourceId, BitSet seen, String[] dirs, String[] filenames,
+                         String[] kinds, int size) throws SQLException {
+        int key = allocateKeys(1);
+        Result result = new Result(pool);
+        int[] present = new int[size];
+        int[] count = new int[1];
+        pool.transaction(conn -> {
+            result.inserted.clear();
+            count[0] = 0;
+            createStageTable(conn);
+            // 这批中新建的目录（自增 ID 大于已有的最大值）下还没有书籍，不必逐行查询
+            int maxDir;
+            try (ResultSet rs = conn.prepare("SELECT COALESCE(MAX(id), 0) FROM directories").executeQuery()) {
+                maxDir = rs.next() ? rs.getInt(1) : 0;
+            }
+            PreparedStatement find = conn.prepare("SELECT b.id, EXISTS (SELECT 1 FROM book_sources " +
+                    "WHERE file_id = ? AND book_id = b.id) FROM books b WHERE b.dir_id = ? AND b.filename = ?");
+            PreparedStatement link = conn.prepare("INSERT OR IGNORE INTO book_sources(file_id, book_id) VALUES(?, ?)");
+            PreparedStatement stage = conn.prepare(
+                    "INSERT INTO temp.import_stage(file, dir_id, filename, kind) VALUES(?, ?, ?, ?)");
+            for (int i = 0; i < size; i++) {
+                int dirId = pool.directories().idFor(conn, dirs[i]);
+                if (dirId <= maxDir) {
+                    find.setInt(1, sourceId);
+                    find.setInt(2, dirId);
+                    find.setString(3, filenames[i]);
+                    try (ResultSet rs = find.executeQuery()) {
+                        if (rs.next()) {
+                            int id = rs.getInt(1);
+                            present[count[0]++] = id;
+                            if (!rs.getBoolean(2)) {
+                                // 已由其他来源导入的书籍
+                                link.setInt(1, sourceId);
+                                link.setInt(2, id);
+                                link.addBatch();
+                            }
+                            continue;
+                        }
+                    }
+                }
+                stage.setInt(1, key);
+                stage.setInt(2, dirId);
+                stage.setString(3, filenames[i]);
+                stage.setString(4, kinds[i]);
+                stage.addBatch();
+            }
+            link.executeBatch();
+            stage.executeBatch();
+            insertStaged(conn, key, sourceId, result);
+            return clearStage(conn, key);
+        });
+        if (seen != null) {
+            for (int i = 0; i < count[0]; i++) seen.set(present[i]);
+            for (int id : result.inserted) seen.set(id);
+        }
+        return result;
+    }
+
+    /**
+     * 结束完整替换：删除上次属于该来源、这次未出现且不属于其他来源的书籍，记录指纹
+     * @param seen 本次出现的书籍 ID（各批 insert 记录的）
+     * @param size 来源文件大小，目录来源为 null
+     * @param mtime 来源文件修改时间，目录来源为 null
+     * @param hash 来源文件的 SHA-256，目录来源为 null
+     */
+    static Result finishReplace(ConnectionPool pool, int sourceId, BitSet seen, Long size, Long mtime, String hash)
+            throws SQLException {
+        Result result = new Result(pool);
+        pool.transaction(conn -> {
+            result.deleted.clear();
+            PreparedStatement linked = conn.prepare("SELECT book_id FROM book_sources WHERE file_id = ?");
+            linked.setInt(1, sourceId);
+            List<Integer> goneIds = new ArrayList<>();
+            try (ResultSet rs = linked.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    if (!seen.get(id)) goneIds.add(id);
+                }
+            }
+            for (int dir : unlink(conn, sourceId, goneIds, result)) pool.directories().prune(conn, dir);
+
+            PreparedStatement fingerprint = conn.prepare(
+                    "UPDATE import_files SET size = ?, mtime = ?, hash = ?, imported_at = ? WHERE id = ?");
+            fingerprint.setObject(1, size);
+            fingerprint.setObject(2, mtime);
+            fingerprint.setString(3, hash);
+            fingerprint.setString(4, LocalDateTime.now().format(TIME_FORMAT));
+            fingerprint.setInt(5, sourceId);
+            return fingerprint.executeUpdate();
+        });
+        return result;
+    }
+
+    /**
+     * 在一个事务中增量更新某个来源：先移除给定的文件和目录（目录下的所有书籍），再加入给定的书籍
+     * 加入的书籍也在这个事务中写入临时表：目录 ID 与移除时删除空目录的判断在同一个事务中，不会指向已删除的目录
+     * @param removedFiles 被移除的书籍 {目录前缀, 文件名}
+     * @param removedDirs 被移除的目录前缀（以 '/' 结尾）
+     */
+    static Result update(ConnectionPool pool, String source, String[] dirs, String[] filenames, String[] kinds,
+                         int size, List<String[]> removedFiles, List<String> removedDirs) throws SQLException {
+        int key = allocateKeys(1);
+        Result result = new Result(pool);
+        pool.transaction(conn -> {
+            result.inserted.clear();
+            result.deleted.clear();
+            int sourceId = upsertSource(conn, source, null, null, null);
+            createStageTable(conn);
+            stageRows(pool, conn, key, dirs, filenames, kinds, size);
+
+            // 先移除再加入：目录被删除后又在同一批变化中重新出现时，重新出现的书籍不能被随后的移除删掉
+            List<Integer> goneIds = new ArrayList<>();
+            PreparedStatement byPath = conn.prepare("SELECT b.id FROM books b JOIN book_sources bs ON bs.book_id = b.id " +
+                    "WHERE bs.file_id = ? AND b.dir_id = (SELECT id FROM directories WHERE path = ?) AND b.filename = ?");
+            for (String[] file : removedFiles) {
+                byPath.setInt(1, sourceId);
+                byPath.setString(2, file[0]);
+                byPath.setString(3, file[1]);
+                try (ResultSet rs = byPath.executeQuery()) {
+                    while (rs.next()) goneIds.add(rs.getInt(1));
+                }
+            }
+            PreparedStatement byDir = conn.prepare("SELECT b.id FROM books b JOIN book_sources bs ON bs.book_id = b.id " +
+                    "JOIN directories d ON d.id = b.dir_id WHERE bs.file_id = ? AND substr(d.path, 1, length(?)) = ?");
+            for (String dir : removedDirs) {
+                byDir.setInt(1, sourceId);
+                byDir.setString(2, dir);
+                byDir.setString(3, dir);
+                try (ResultSet rs = byDir.executeQuery()) {
+                    while (rs.next()) goneIds.add(rs.getInt(1));
+                }
+            }
+            Set<Integer> emptied = unlink(conn, sourceId, goneIds, result);
+            insertStaged(conn, key, sourceId, result);
+            // 重新出现在同一目录中的书籍已经写入，之后再删除仍然为空的目录
+            for (int dir : emptied) pool.directories().prune(conn, dir);
+
+            return clearStage(conn, key);
+        });
+        return result;
+    }
+
+    private static void createStageTable(ConnectionPool.PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TEMP TABLE IF NOT EXISTS import_stage (" +
+                    "file INTEGER NOT NULL, dir_id INTEGER NOT NULL, filename TEXT NOT NULL, kind TEXT)");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS temp.import_stage_path " +
+                    "ON import_stage(file, dir_id, filename)");
+        }
+    }
+
+    private static int[] stageRows(ConnectionPool pool, ConnectionPool.PooledConnection conn, int key, String[] dirs,
+                                   String[] filenames, String[] kinds, int size) throws SQLException {
+        PreparedStatement stmt = conn.prepare(
+                "INSERT INTO temp.import_stage(file, dir_id, filename, kind) VALUES(?, ?, ?, ?)");
+        for (int i = 0; i < size; i++) {
+            // 目录行存入 directories 表，书籍只保存目录 ID 和文件名
+            stmt.setInt(1, key);
+            stmt.setInt(2, pool.directories().idFor(conn, dirs[i]));
+            stmt.setString(3, filenames[i]);
+            stmt.setString(4, kinds[i]);
+            stmt.addBatch();
+        }
+        return stmt.executeBatch();
+    }
+
+    private static int clearStage(ConnectionPool.PooledConnection conn, int key) throws SQLException {
+        PreparedStatement clear = conn.prepare("DELETE FROM temp.import_stage WHERE file = ?");
+        clear.setInt(1, key);
+        return clear.executeUpdate();
+    }
+
+    private static int upsertSource(ConnectionPool.PooledConnection conn, String source, Long size, Long mtime,
+                                    String hash) throws SQLException {
+        PreparedStatement upsert = conn.prepare(
+                "INSERT INTO import_files(path, size, mtime, hash, imported_at) VALUES(?, ?, ?, ?, ?) " +
+                "ON CONFLICT(path) DO UPDATE SET size = excluded.size, mtime = excluded.mtime, " +
+                "hash = excluded.hash, imported_at = excluded.imported_at");
+        upsert.setString(1, source);
+        upsert.setObject(2, size);
+        upsert.setObject(3, mtime);
+        upsert.setString(4, hash);
+        upsert.setString(5, LocalDateTime.now().format(TIME_FORMAT));
+        upsert.executeUpdate();
+        return sourceId(conn, source);
+    }
+
+    private static int sourceId(ConnectionPool.PooledConnection conn, String source) throws SQLException {
+        PreparedStatement select = conn.prepare("SELECT id FROM import_files WHERE path = ?");
+        select.setString(1, source);
+        try (ResultSet rs = select.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * 插入分组中路径尚不存在的书籍（含分组内的重复行），并把分组中的所有书籍关联到来源
+     */
+    private static void insertStaged(ConnectionPool.PooledConnection conn, int key, int sourceId, Result result)
+            throws SQLException {
+        int maxId;
+        try (ResultSet rs = conn.prepare("SELECT COALESCE(MAX(id), 0) FROM books").executeQuery()) {
+            maxId = rs.next() ? rs.getInt(1) : 0;
+        }
+        PreparedStatement insert = conn.prepare(
+                "INSERT INTO books(dir_id, filename, kind) " +
+                "SELECT dir_id, filename, kind FROM temp.import_stage WHERE file = ? ORDER BY rowid " +
+                "ON CONFLICT(dir_id, filename) DO NOTHING");
+        insert.setInt(1, key);
+        insert.executeUpdate();
+        // 自增 ID 总是大于现有最大值，但不假定新 ID 连续
+        PreparedStatement newIds = conn.prepare("SELECT id FROM books WHERE id > ? ORDER BY id");
+        newIds.setInt(1, maxId);
+        try (ResultSet rs = newIds.executeQuery()) {
+            while (rs.next()) result.inserted.add(rs.getInt(1));
+        }
+
+        PreparedStatement link = conn.prepare(
+                "INSERT OR IGNORE INTO book_sources(file_id, book_id) SELECT ?, b.id " +
+                "FROM temp.import_stage s JOIN books b ON b.dir_id = s.dir_id AND b.filename = s.filename " +
+                "WHERE s.file = ?");
+        link.setInt(1, sourceId);
+        link.setInt(2, key);
+        link.executeUpdate();
+    }
+
+    /**
+     * 解除书籍与来源的关联，其他来源中也没有的书籍被删除
+     * @return 被删除书籍所在的目录 ID（由调用方在事务结束前检查是否已空，见 Directories.prune）
+     */
+    private static Set<Integer> unlink(ConnectionPool.PooledConnection conn, int sourceId, List<Integer> ids,
+                                       Result result) throws SQLException {
+        PreparedStatement unlink = conn.prepare("DELETE FROM book_sources WHERE file_id = ? AND book_id = ?");
+        PreparedStatement delete = conn.prepare("DELETE FROM books WHERE id = ? " +
+                "AND NOT EXISTS (SELECT 1 FROM book_sources WHERE book_id = ?) RETURNING dir_id");
+        Set<Integer> dirs = new HashSet<>();
+        for (int id : ids) {
+            unlink.setInt(1, sourceId);
+            unlink.setInt(2, id);
+            unlink.executeUpdate();
+            delete.setInt(1, id);
+            delete.setInt(2, id);
+            try (ResultSet rs = delete.executeQuery()) {
+                if (rs.next()) {
+                    result.deleted.add(id);
+                    dirs.add(rs.getInt(1));
+                }
+            }
+        }
+        return dirs;
+    }
+}
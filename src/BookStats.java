@@ -0,0 +1,48 @@
+import java.util.Map;
+
+/**
+ * 书库统计信息
+ */
+public final class BookStats {
+    private final int books;
+    private final int directories;
+    private final int sources;
+    private final int logs;
+    private final long databaseBytes;
+    private final int schemaVersion;
+    private final Map<String, Integer> kinds;
+
+    BookStats(int books, int directories, int sources, int logs, long databaseBytes, int schemaVersion,
+              Map<String, Integer> kinds) {
+        this.books = books;
+        this.directories = directories;
+        this.sources = sources;
+        this.logs = logs;
+        this.databaseBytes = databaseBytes;
+        this.schemaVersion = schemaVersion;
+        this.kinds = kinds;
+    }
+
+    public int getBooks() { return books; }
+
+    public int getDirectories() { return directories; }
+
+    /**
+     * 导入过的索引文件和同步中的书库目录数量
+     */
+    public int getSources() { return sources; }
+
+    public int getLogs() { return logs; }
+
+    /**
+     * 数据库文件大小（页数 × 页大小，不含 WAL）
+     */
+    public long getDatabaseBytes() { return databaseBytes; }
+
+    public int getSchemaVersion() { return schemaVersion; }
+
+    /**
+     * 各类型的书籍数量，按数量从多到少排列
+     */
+    public Map<String, Integer> getKinds() { return kinds; }
+}
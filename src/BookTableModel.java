@@ -0,0 +1,318 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 书籍表格模型（虚拟化分页）
+ * 浏览全部书籍时只加载 JTable 实际显示到的页面，并预取相邻页；
+ * 页面按 ID 倒序键集分页读取，放在 LRU 缓存中，内存占用与书库大小无关。
+ * 搜索结果数量有限，直接整体显示。分页浏览时可以只显示某一类型的书籍。
+ * 数据层的变更通知 (BookEvents) 被转换为细粒度的行插入/更新/删除事件，
+ * 不重新加载整张表，用户的选中行和滚动位置得以保留。
+ * 多书库搜索的结果行末尾带书库名（见 CatalogShards），变更通知只来自主书库，只应用到主书库的行
+ */
+public class BookTableModel extends AbstractTableModel {
+    private static final int PAGE_SIZE = 200;
+    // LRU 缓存最多保留的页数
+    private static final int MAX_PAGES = 50;
+    private static final String LOADING = "加载中...";
+    // 多书库搜索结果中书库名所在的列
+    private static final int SHARD_COLUMN = 3;
+    // 界面线程上应用数据的耗时（表格重新布局和重绘请求）
+    private static final Metrics.Timer SHOW_ROWS = Metrics.timer("BookTableModel.showRows");
+    private static final Metrics.Timer APPLY_PAGE = Metrics.timer("BookTableModel.applyPage");
+
+    private final String[] columnNames;
+    // 除 booksChanged 外所有方法都在 EDT 上调用，后台线程只负责读库
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "book-page-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    private final LinkedHashMap<Integer, Vector<Vector<Object>>> pages =
+            new LinkedHashMap<Integer, Vector<Vector<Object>>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Vector<Vector<Object>>> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            };
+    // 页号 -> 该页最后一本书的 ID，作为下一页的键集锚点
+    private final Map<Integer, Integer> anchors = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+
+    // 搜索结果；为 null 时处于分页浏览模式
+    private Vector<Vector<Object>> rows;
+    // 分页浏览的类型筛选，为 null 时显示全部
+    private String kind;
+    private int rowCount;
+    // 分页模式下已计入 rowCount 的最大 ID，用于判断变更通知是否已包含在内
+    private int maxId;
+    // 每次切换数据集时递增，丢弃过期的 showAll 结果
+    private int dataVersion;
+    // 行号发生移动时递增，丢弃过期的页面加载结果
+    private int layoutVersion;
+
+    public BookTableModel(String[] columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * 切换到分页浏览全部书籍（后台读取总数后刷新）
+     */
+    public void showAll() {
+        showAll(null);
+    }
+
+    /**
+     * 分页浏览某一类型的书籍
+     * @param kind 类型，为 null 时浏览全部书籍
+     */
+    public void showAll(String kind) {
+        int version = ++dataVersion;
+        loader.execute(() -> {
+            int[] stats = QueryDB.getBookCountAndMaxId(kind);
+            SwingUtilities.invokeLater(() -> {
+                if (version != dataVersion) return;
+                rows = null;
+                this.kind = kind;
+                rowCount = stats[0];
+                maxId = stats[1];
+                clearPages();
+                fireTableDataChanged();
+            });
+        });
+    }
+
+    /**
+     * 显示一组已加载的行（搜索结果）
+     */
+    public void showRows(Vector<Vector<Object>> data) {
+        long t0 = SHOW_ROWS.start();
+        dataVersion++;
+        rows = data;
+        rowCount = data.size();
+        clearPages();
+        fireTableDataChanged();
+        SHOW_ROWS.stop(t0, data.size());
+    }
+
+    /**
+     * 处理数据层的变更通知（可在任意线程调用）
+     * 需要查库的部分在加载线程中执行，随后按顺序在 EDT 上应用
+     */
+    public void booksChanged(BookEvents.Change change) {
+        loader.execute(() -> {
+            switch (change.getType()) {
+                case INSERTED:
+                    SwingUtilities.invokeLater(() -> applyInserted(change.getIds()));
+                    break;
+                case UPDATED: {
+                    int id = change.getIds()[0];
+                    Vector<Object> book = QueryDB.getBook(id);
+                    if (book != null) SwingUtilities.invokeLater(() -> applyUpdated(id, book));
+                    break;
+                }
+                case DELETED: {
+                    int id = change.getIds()[0];
+                    int row = QueryDB.getBookRow(id);
+                    SwingUtilities.invokeLater(() -> applyDeleted(id, row));
+                    break;
+                }
+                case CLEARED:
+                    SwingUtilities.invokeLater(() -> {
+                        if (rows != null) showRows(new Vector<>());
+                        else showAll(kind);
+                    });
+                    break;
+            }
+        });
+    }
+
+    /**
+     * 按类型分页浏览时，变更通知不带类型，无法判断行号如何移动，
+     * 改为重新读取数量并丢弃已加载的页
+     * @return 已经重新加载
+     */
+    private boolean reloadIfFiltered() {
+        if (rows != null || kind == null) return false;
+        showAll(kind);
+        return true;
+    }
+
+    /**
+     * 新书 ID 最大，按倒序排在最前面
+     */
+    private void applyInserted(int[] ids) {
+        if (rows != null) return; // 搜索结果不自动加入新书
+        if (reloadIfFiltered()) return;
+        int count = 0;
+        for (int id : ids) {
+            if (id > maxId) count++; // 读取总数时已包含的不再重复计算
+        }
+        if (count == 0) return;
+        maxId = Math.max(maxId, ids[ids.length - 1]);
+        rowCount += count;
+        dropPagesFrom(0);
+        fireTableRowsInserted(0, count - 1);
+    }
+
+    private void applyUpdated(int id, Vector<Object> book) {
+        if (reloadIfFiltered()) return; // 改名可能改变类型
+        if (rows != null) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (id == (Integer) rows.get(i).get(0) && isMain(rows.get(i))) {
+                    rows.set(i, book);
+                    fireTableRowsUpdated(i, i);
+                }
+            }
+            return;
+        }
+        for (Map.Entry<Integer, Vector<Vector<Object>>> entry : pages.entrySet()) {
+            Vector<Vector<Object>> data = entry.getValue();
+            for (int i = 0; i < data.size(); i++) {
+                if (id == (Integer) data.get(i).get(0)) {
+                    data.set(i, book);
+                    int row = entry.getKey() * PAGE_SIZE + i;
+                    fireTableRowsUpdated(row, row);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param row 删除前该书在全部书籍中的行号（分页模式使用）
+     */
+    private void applyDeleted(int id, int row) {
+        if (reloadIfFiltered()) return;
+        if (rows != null) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (id == (Integer) rows.get(i).get(0) && isMain(rows.get(i))) {
+                    rows.remove(i);
+                    rowCount--;
+                    fireTableRowsDeleted(i, i);
+                    return;
+                }
+            }
+            return;
+        }
+        if (id > maxId || row < 0 || row >= rowCount) return;
+        rowCount--;
+        // 之前的页不受影响，键集锚点仍然有效
+        dropPagesFrom(row / PAGE_SIZE);
+        fireTableRowsDeleted(row, row);
+    }
+
+    /**
+     * 丢弃从某页开始的缓存页（这些页的行号已经移动）
+     * 同时作废正在加载的页面结果
+     */
+    private void dropPagesFrom(int page) {
+        layoutVersion++;
+        pages.keySet().removeIf(p -> p >= page);
+        anchors.keySet().removeIf(p -> p >= page);
+        loading.clear();
+    }
+
+    /**
+     * 取某行书籍的 ID，该行尚未加载时返回 null
+     */
+    public Integer getBookId(int row) {
+        return (Integer) getValueAt(row, 0);
+    }
+
+    /**
+     * 取某行书籍所在的书库，分页浏览和单书库搜索的行都属于主书库
+     */
+    public String getShard(int row) {
+        Object shard = getValueAt(row, SHARD_COLUMN);
+        return shard != null ? (String) shard : CatalogShards.MAIN;
+    }
+
+    private static boolean isMain(Vector<Object> row) {
+        return row.size() <= SHARD_COLUMN || CatalogShards.MAIN.equals(row.get(SHARD_COLUMN));
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) { return false; } // 禁止双击编辑
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (rows != null) return cell(rows.get(row), column);
+
+        int page = row / PAGE_SIZE;
+        Vector<Vector<Object>> data = pages.get(page);
+        if (data == null) {
+            request(page);
+            return column == 1 ? LOADING : null;
+        }
+        // 预取相邻页，滚动时不出现空白
+        if (row % PAGE_SIZE >= PAGE_SIZE / 2) request(page + 1);
+        else if (page > 0) request(page - 1);
+
+        int index = row - page * PAGE_SIZE;
+        // 数据变化后页面可能比预期短
+        return index < data.size() ? cell(data.get(index), column) : null;
+    }
+
+    /**
+     * 主书库的行没有书库名一列
+     */
+    private static Object cell(Vector<Object> row, int column) {
+        return column < row.size() ? row.get(column) : CatalogShards.MAIN;
+    }
+
+    private void request(int page) {
+        if (page < 0 || page * PAGE_SIZE >= rowCount) return;
+        if (pages.containsKey(page) || !loading.add(page)) return;
+
+        int version = layoutVersion;
+        String filter = kind;
+        Integer anchor = page == 0 ? Integer.valueOf(Integer.MAX_VALUE) : anchors.get(page - 1);
+        loader.execute(() -> {
+            Vector<Vector<Object>> data = anchor != null
+                    ? QueryDB.getBooksPage(anchor, PAGE_SIZE, filter)
+                    : QueryDB.getBooksPageAt(page * PAGE_SIZE, PAGE_SIZE, filter);
+            SwingUtilities.invokeLater(() -> {
+                if (version != layoutVersion) return;
+                long t0 = APPLY_PAGE.start();
+                loading.remove(page);
+                pages.put(page, data);
+                if (!data.isEmpty()) anchors.put(page, (Integer) data.get(data.size() - 1).get(0));
+                int first = page * PAGE_SIZE;
+                int last = Math.min(first + PAGE_SIZE, rowCount) - 1;
+                if (first <= last) fireTableRowsUpdated(first, last);
+                APPLY_PAGE.stop(t0, data.size());
+            });
+        });
+    }
+
+    private void clearPages() {
+        layoutVersion++;
+        pages.clear();
+        anchors.clear();
+        loading.clear();
+    }
+}
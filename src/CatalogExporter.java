@@ -0,0 +1,317 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 书库和日志的流式导出
+ * 在一个读连接上按 ID 顺序单向遍历 books 或 logs 表，边读边编码写入通道，不在内存中保存结果集。
+ * 支持 TSV、CSV、NDJSON 和紧凑的二进制快照（可由 CatalogLoader 快速导入），均可选 gzip 压缩
+ *
+ * 二进制快照格式：
+ * <pre>
+ *   "KBCAT" 版本(1 字节)
+ *   记录*：  'D' 目录ID 路径                     目录，在第一本属于它的书之前出现
+ *            'B' 书籍ID 目录ID 文件名 类型
+ *            'L' 日志ID 时间 操作 详情
+ *   'E' 书籍数 日志数                              结束标记，用于检查文件是否完整
+ * </pre>
+ * 整数为无符号 varint（每字节 7 位，小端），字符串为 varint(UTF-8 字节数 + 1) 加内容，0 表示 null
+ */
+public class CatalogExporter {
+
+    public enum Format {
+        TSV, CSV, NDJSON, BINARY;
+
+        /**
+         * 按名称解析（不区分大小写，"bin" 等同于 BINARY），无法识别时返回 null
+         */
+        public static Format parse(String name) {
+            String n = name.toLowerCase(Locale.ROOT);
+            if (n.equals("bin")) return BINARY;
+            for (Format format : values()) {
+                if (format.name().toLowerCase(Locale.ROOT).equals(n)) return format;
+            }
+            return null;
+        }
+    }
+
+    public enum Table { BOOKS, LOGS }
+
+    static final byte[] MAGIC = {'K', 'B', 'C', 'A', 'T'};
+    static final int VERSION = 1;
+    static final byte TAG_DIRECTORY = 'D';
+    static final byte TAG_BOOK = 'B';
+    static final byte TAG_LOG = 'L';
+    static final byte TAG_END = 'E';
+
+    static final int BUFFER_SIZE = 1 << 16;
+    // 驱动每次从游标取的行数提示
+    private static final int FETCH_SIZE = 1000;
+    // 文本格式攒够这么多字符后编码写出
+    private static final int FLUSH_CHARS = 32 * 1024;
+
+    private static final Metrics.Timer EXPORT = Metrics.timer("CatalogExporter.export");
+
+    private final ConnectionPool pool;
+
+    public CatalogExporter(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 导出到文件（已存在时覆盖）
+     * @return 导出的行数
+     */
+    public long export(Path file, Table table, Format format, boolean gzip) throws IOException, SQLException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return export(channel, table, format, gzip);
+        }
+    }
+
+    /**
+     * 导出到通道（不关闭通道，可用于标准输出）
+     * @return 导出的行数
+     */
+    public long export(WritableByteChannel channel, Table table, Format format, boolean gzip)
+            throws IOException, SQLException {
+        long t0 = EXPORT.start();
+        try {
+            GZIPOutputStream gz = null;
+            WritableByteChannel target = channel;
+            if (gzip) {
+                gz = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                target = Channels.newChannel(gz);
+            }
+            Sink sink = new Sink(target);
+            long rows;
+            try {
+                rows = format == Format.BINARY ? writeBinary(sink, table) : writeText(sink, table, format);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            sink.flush();
+            if (gz != null) gz.finish();
+            EXPORT.stop(t0, rows);
+            return rows;
+        } catch (IOException | SQLException | RuntimeException e) {
+            EXPORT.fail(t0);
+            throw e;
+        }
+    }
+
+    // ================= 文本格式 =================
+
+    private long writeText(Sink sink, Table table, Format format) throws SQLException {
+        StringBuilder sb = new StringBuilder(FLUSH_CHARS + 1024);
+        if (format == Format.CSV) {
+            sb.append(table == Table.BOOKS ? "id,name,kind\r\n" : "id,time,action,details\r\n");
+        }
+        return pool.read(conn -> {
+            long rows = 0;
+            try (ResultSet rs = query(conn, table)) {
+                while (rs.next()) {
+                    if (table == Table.BOOKS) {
+                        String name = pool.directories().pathOf(conn, rs.getInt(2)) + rs.getString(3);
+                        appendRow(sb, format, rs.getInt(1), "name", name, "kind", rs.getString(4), null, null);
+                    } else {
+                        appendRow(sb, format, rs.getInt(1), "time", rs.getString(2), "action", rs.getString(3),
+                                "details", rs.getString(4));
+                    }
+                    rows++;
+                    if (sb.length() >= FLUSH_CHARS) {
+                        sink.write(sb);
+                        sb.setLength(0);
+                    }
+                }
+            }
+            sink.write(sb);
+            return rows;
+        });
+    }
+
+    /**
+     * 追加一行：id 加两到三个文本字段（key3 为 null 时只有两个）
+     */
+    private static void appendRow(StringBuilder sb, Format format, int id, String key1, String v1,
+                                  String key2, String v2, String key3, String v3) {
+        switch (format) {
+            case TSV:
+                sb.append(id).append('\t').append(v1).append('\t').append(v2);
+                if (key3 != null) sb.append('\t').append(v3);
+                sb.append('\n');
+                break;
+            case CSV:
+                sb.append(id).append(',');
+                appendCsv(sb, v1);
+                sb.append(',');
+                appendCsv(sb, v2);
+                if (key3 != null) {
+                    sb.append(',');
+                    appendCsv(sb, v3);
+                }
+                sb.append("\r\n");
+                break;
+            default:
+                sb.append("{\"id\":").append(id).append(",\"").append(key1).append("\":");
+                LogArchiver.appendJson(sb, v1);
+                sb.append(",\"").append(key2).append("\":");
+                LogArchiver.appendJson(sb, v2);
+                if (key3 != null) {
+                    sb.append(",\"").append(key3).append("\":");
+                    LogArchiver.appendJson(sb, v3);
+                }
+                sb.append("}\n");
+        }
+    }
+
+    /**
+     * RFC 4180：含逗号、引号或换行的字段用双引号括起，内部的引号写两次；null 写为空字段
+     */
+    private static void appendCsv(StringBuilder sb, String value) {
+        if (value == null) return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    // ================= 二进制快照 =================
+
+    private long writeBinary(Sink sink, Table table) throws SQLException {
+        sink.bytes(MAGIC);
+        sink.put((byte) VERSION);
+        long rows = pool.read(conn -> {
+            long n = 0;
+            BitSet writtenDirs = new BitSet();
+            try (ResultSet rs = query(conn, table)) {
+                while (rs.next()) {
+                    if (table == Table.BOOKS) {
+                        int dirId = rs.getInt(2);
+                        if (dirId != 0 && !writtenDirs.get(dirId)) {
+                            writtenDirs.set(dirId);
+                            sink.put(TAG_DIRECTORY);
+                            sink.varint(dirId);
+                            sink.string(pool.directories().pathOf(conn, dirId));
+                        }
+                        sink.put(TAG_BOOK);
+                        sink.varint(rs.getInt(1));
+                        sink.varint(dirId);
+                        sink.string(rs.getString(3));
+                        sink.string(rs.getString(4));
+                    } else {
+                        sink.put(TAG_LOG);
+                        sink.varint(rs.getInt(1));
+                        sink.string(rs.getString(2));
+                        sink.string(rs.getString(3));
+                        sink.string(rs.getString(4));
+                    }
+                    n++;
+                }
+            }
+            return n;
+        });
+        sink.put(TAG_END);
+        sink.varint(table == Table.BOOKS ? rows : 0);
+        sink.varint(table == Table.LOGS ? rows : 0);
+        return rows;
+    }
+
+    private static ResultSet query(ConnectionPool.PooledConnection conn, Table table) throws SQLException {
+        String sql = table == Table.BOOKS
+                ? "SELECT b.id, b.dir_id, b.filename, b.kind FROM books b ORDER BY b.id"
+                : "SELECT id, log_time, action, details FROM logs ORDER BY id";
+        PreparedStatement pstmt = conn.prepare(sql);
+        pstmt.setFetchSize(FETCH_SIZE);
+        return pstmt.executeQuery();
+    }
+
+    /**
+     * 写缓冲区，满了写到通道（在读连接的回调中使用，IO 异常包装为 UncheckedIOException）
+     */
+    private static final class Sink {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Sink(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void put(byte b) {
+            if (!buffer.hasRemaining()) flush();
+            buffer.put(b);
+        }
+
+        void varint(long value) {
+            if (buffer.remaining() < 10) flush();
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1L);
+            bytes(bytes);
+        }
+
+        void bytes(byte[] bytes) {
+            if (bytes.length > buffer.remaining()) {
+                flush();
+                if (bytes.length > buffer.capacity()) {
+                    drain(ByteBuffer.wrap(bytes));
+                    return;
+                }
+            }
+            buffer.put(bytes);
+        }
+
+        void write(CharSequence text) {
+            if (text.length() > 0) bytes(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        void flush() {
+            buffer.flip();
+            drain(buffer);
+            buffer.clear();
+        }
+
+        private void drain(ByteBuffer source) {
+            try {
+                while (source.hasRemaining()) channel.write(source);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 导入 CatalogExporter 生成的二进制快照（gzip 压缩的文件自动识别）
+ * 书籍按路径去重，已存在的跳过；原 ID 大于库中所有已用过的 ID 时保留原 ID，
+ * 因此导入空数据库后 ID 与导出时一致。日志追加在现有日志之后（使用新 ID）。
+ * 每 import.batchSize 条记录提交一个事务并发出 BookEvents 通知；导入默认数据库之前先创建快照
+ */
+public class CatalogLoader {
+    private static final int DEFAULT_BATCH_SIZE = 5000;
+    private static final Metrics.Timer LOAD = Metrics.timer("CatalogLoader.load");
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+
+    /**
+     * 一次导入的结果
+     */
+    public static final class Result {
+        public long books;
+        public long duplicates;
+        public long logs;
+
+        @Override
+        public String toString() {
+            return "新增书籍 " + books + " 本，已存在 " + duplicates + " 本，日志 " + logs + " 条";
+        }
+    }
+
+    public CatalogLoader(ConnectionPool pool) {
+        this(pool, AppConfig.getInt("import.batchSize", DEFAULT_BATCH_SIZE));
+    }
+
+    public CatalogLoader(ConnectionPool pool, int batchSize) {
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public Result load(Path file) throws IOException, SQLException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return load(in);
+        }
+    }
+
+    /**
+     * 从输入流导入（不关闭输入流）
+     */
+    public Result load(InputStream input) throws IOException, SQLException {
+        long t0 = LOAD.start();
+        Result result = new Result();
+        try {
+            Snapshots.beforeBulkChange(pool, Snapshots.BEFORE_IMPORT);
+            BufferedInputStream in = new BufferedInputStream(input, CatalogExporter.BUFFER_SIZE);
+            // gzip 文件以 1f 8b 开头
+            in.mark(2);
+            boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+            in.reset();
+            InputStream raw = gzip ? new GZIPInputStream(in, CatalogExporter.BUFFER_SIZE) : in;
+            read(new Source(Channels.newChannel(raw)), result);
+            LOAD.stop(t0, result.books + result.logs);
+            return result;
+        } catch (IOException | SQLException | RuntimeException e) {
+            LOAD.fail(t0);
+            throw e;
+        } finally {
+            if (result.books > 0 && ConnectionPool.isDefault(pool)) {
+                try {
+                    BookSearchIndex.catchUp();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void read(Source source, Result result) throws IOException, SQLException {
+        for (byte b : CatalogExporter.MAGIC) {
+            if (source.get() != b) throw new IOException("不是书库快照文件");
+        }
+        int version = source.get();
+        if (version != CatalogExporter.VERSION) throw new IOException("不支持的快照版本: " + version);
+
+        Map<Integer, String> dirs = new HashMap<>();
+        Batch batch = new Batch();
+        long books = 0;
+        long logs = 0;
+        while (true) {
+            byte tag = source.get();
+            switch (tag) {
+                case CatalogExporter.TAG_DIRECTORY:
+                    dirs.put((int) source.varint(), source.string());
+                    break;
+                case CatalogExporter.TAG_BOOK: {
+                    batch.ids.add((int) source.varint());
+                    int dirId = (int) source.varint();
+                    String dir = dirId == 0 ? "" : dirs.get(dirId);
+                    if (dir == null) throw new IOException("快照文件损坏：未定义的目录 " + dirId);
+                    batch.dirs.add(dir);
+                    batch.filenames.add(source.string());
+                    batch.kinds.add(source.string());
+                    books++;
+                    break;
+                }
+                case CatalogExporter.TAG_LOG:
+                    source.varint(); // 日志使用新 ID
+                    batch.logs.add(new String[]{source.string(), source.string(), source.string()});
+                    logs++;
+                    break;
+                case CatalogExporter.TAG_END:
+                    if (source.varint() != books || source.varint() != logs) {
+                        throw new IOException("快照文件损坏：记录数与结束标记不符");
+                    }
+                    flush(batch, result);
+                    return;
+                default:
+                    throw new IOException("快照文件损坏：未知的记录类型 " + tag);
+            }
+            if (batch.size() >= batchSize) flush(batch, result);
+        }
+    }
+
+    /**
+     * 尚未写入的一批记录
+     */
+    private static final class Batch {
+        final List<Integer> ids = new ArrayList<>();
+        final List<String> dirs = new ArrayList<>();
+        final List<String> filenames = new ArrayList<>();
+        final List<String> kinds = new ArrayList<>();
+        final List<String[]> logs = new ArrayList<>();
+
+        int size() {
+            return ids.size() + logs.size();
+        }
+
+        void clear() {
+            ids.clear();
+            dirs.clear();
+            filenames.clear();
+            kinds.clear();
+            logs.clear();
+        }
+    }
+
+    private void flush(Batch batch, Result result) throws SQLException {
+        if (batch.size() == 0) return;
+        int[] inserted = pool.transaction(conn -> {
+            int[] ids = new int[batch.ids.size()];
+            int count = 0;
+            // 自增序列记录着被删除过的最大 ID，保留原 ID 时不能小于等于它
+            int floor = queryInt(conn, "SELECT MAX(m) FROM (SELECT MAX(id) AS m FROM books " +
+                    "UNION ALL SELECT seq FROM sqlite_sequence WHERE name = 'books')");
+            PreparedStatement withId = conn.prepare("INSERT INTO books(id, dir_id, filename, kind) VALUES(?, ?, ?, ?) " +
+                    "ON CONFLICT(dir_id, filename) DO NOTHING");
+            PreparedStatement withoutId = conn.prepare("INSERT INTO books(dir_id, filename, kind) VALUES(?, ?, ?) " +
+                    "ON CONFLICT(dir_id, filename) DO NOTHING");
+            for (int i = 0; i < batch.ids.size(); i++) {
+                int id = batch.ids.get(i);
+                int dirId = pool.directories().idFor(conn, batch.dirs.get(i));
+                PreparedStatement pstmt = id > floor ? withId : withoutId;
+                int p = 1;
+                if (pstmt == withId) pstmt.setInt(p++, id);
+                pstmt.setInt(p++, dirId);
+                pstmt.setString(p++, batch.filenames.get(i));
+                pstmt.setString(p, batch.kinds.get(i));
+                if (pstmt.executeUpdate() > 0) {
+                    int newId = SetUpDB.lastInsertId(conn);
+                    ids[count++] = newId;
+                    floor = Math.max(floor, newId);
+                }
+            }
+            if (!batch.logs.isEmpty()) {
+                PreparedStatement log = conn.prepare("INSERT INTO logs(log_time, action, details) VALUES(?, ?, ?)");
+                for (String[] entry : batch.logs) {
+                    log.setString(1, entry[0]);
+                    log.setString(2, entry[1]);
+                    log.setString(3, entry[2]);
+                    log.addBatch();
+                }
+                log.executeBatch();
+            }
+            return Arrays.copyOf(ids, count);
+        });
+        result.books += inserted.length;
+        result.duplicates += batch.ids.size() - inserted.length;
+        result.logs += batch.logs.size();
+        batch.clear();
+        // 新 ID 都大于库中已有的 ID，且按升序排列
+        if (ConnectionPool.isDefault(pool)) BookEvents.fireInserted(inserted);
+    }
+
+    private static int queryInt(ConnectionPool.PooledConnection conn, String sql) throws SQLException {
+        try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * 从通道按块读取的输入
+     */
+    private static final class Source {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(CatalogExporter.BUFFER_SIZE);
+
+        Source(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        byte get() throws IOException {
+            if (!buffer.hasRemaining()) fill();
+            return buffer.get();
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("快照文件损坏：整数过长");
+        }
+
+        String string() throws IOException {
+            long length = varint();
+            if (length == 0) return null;
+            if (length - 1 > Integer.MAX_VALUE - 8) throw new IOException("快照文件损坏：字符串过长");
+            byte[] bytes = new byte[(int) (length - 1)];
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) fill();
+                int n = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.get(bytes, offset, n);
+                offset += n;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void fill() throws IOException {
+            buffer.clear();
+            int n;
+            do {
+                n = channel.read(buffer);
+            } while (n == 0);
+            buffer.flip();
+            if (n < 0) throw new EOFException("快照文件不完整");
+        }
+    }
+}
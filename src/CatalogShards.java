@@ -0,0 +1,368 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 多个书库（分片）
+ * 默认数据库 kindlebooks.db 是主书库 main，配置项 catalog.shards 列出其他书库，
+ * 如 "nas=/mnt/nas/kindlebooks.db,alice=alice.db"。每个书库是独立的 SQLite 文件，第一次使用时打开并升级结构。
+ * 导入写入一个书库（import.shard，默认 main）；搜索在查询线程上同时查询所有书库，
+ * 每个书库按完整路径排序返回前 catalog.searchLimit 本，经队列流式交给调用线程归并，
+ * 总耗时接近最慢的一个书库而不是各书库之和，凑够数量后不再等待其余结果。
+ * 内存索引、变更通知、快照、分页浏览和 HTTP 服务仍只针对主书库
+ */
+public class CatalogShards {
+    public static final String MAIN = "main";
+
+    private static final int LIMIT = Math.max(1, AppConfig.getInt("catalog.searchLimit", 2000));
+    // 其他书库的读连接数：每次搜索每个书库只用一个连接
+    private static final int SHARD_READERS = 2;
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private static final Metrics.Timer SEARCH = Metrics.timer("CatalogShards.search");
+
+    private static final List<Shard> SHARDS = parse(AppConfig.get("catalog.shards", ""));
+
+    // 每次搜索的每个书库各占一个查询线程（空闲线程复用）。不能用固定大小的线程池：
+    // 归并要等每个书库都给出第一本，同时进行的几次搜索各占一部分线程时会互相等待。
+    // 查询大部分时间在 SQLite 本地代码中，用平台线程而不是虚拟线程
+    private static final AtomicInteger THREADS = new AtomicInteger();
+    private static final ExecutorService SEARCHERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "catalog-search-" + THREADS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 一个书库
+     */
+    public static final class Shard {
+        private final String name;
+        // 主书库为 null
+        private final Path path;
+        private final Metrics.Timer timer;
+        private volatile SqliteBookRepository repository;
+
+        Shard(String name, Path path) {
+            this.name = name;
+            this.path = path;
+            this.timer = Metrics.timer("CatalogShards.search." + name);
+        }
+
+        public String getName() { return name; }
+
+        public boolean isMain() { return path == null; }
+
+        /**
+         * 数据库文件（主书库为 null）
+         */
+        public Path getPath() { return path; }
+
+        /**
+         * 该书库上的仓库，第一次调用时打开连接池并升级结构
+         */
+        public SqliteBookRepository repository() throws SQLException {
+            if (path == null) return SqliteBookRepository.getDefault();
+            SqliteBookRepository result = repository;
+            if (result == null) {
+                synchronized (this) {
+                    result = repository;
+                    if (result == null) {
+                        ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + path, SHARD_READERS);
+                        try {
+                            SchemaMigrator.migrate(pool);
+                        } catch (SQLException | RuntimeException e) {
+                            pool.close();
+                            throw e;
+                        }
+                        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "catalog-shard-shutdown"));
+                        result = new SqliteBookRepository(pool);
+                        repository = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return path == null ? name : name + "=" + path;
+        }
+    }
+
+    /**
+     * 搜索结果中的一本书及其所在书库
+     */
+    public static final class Hit {
+        private final String shard;
+        private final Book book;
+
+        Hit(String shard, Book book) {
+            this.shard = shard;
+            this.book = book;
+        }
+
+        public String getShard() { return shard; }
+
+        public Book getBook() { return book; }
+
+        @Override
+        public String toString() {
+            return book + "\t" + shard;
+        }
+    }
+
+    /**
+     * 所有书库，主书库在最前面
+     */
+    public static List<Shard> shards() {
+        return SHARDS;
+    }
+
+    /**
+     * 是否配置了主书库以外的书库
+     */
+    public static boolean isSharded() {
+        return SHARDS.size() > 1;
+    }
+
+    /**
+     * 按名字取书库，未配置时返回 null
+     */
+    public static Shard shard(String name) {
+        return find(SHARDS, name);
+    }
+
+    /**
+     * 按名字取书库上的仓库
+     * @throws IllegalArgumentException 未配置该书库
+     */
+    public static SqliteBookRepository repository(String name) throws SQLException {
+        Shard shard = shard(name);
+        if (shard == null) throw new IllegalArgumentException("未配置的书库: " + name);
+        return shard.repository();
+    }
+
+    /**
+     * 默认的导入目标（配置项 import.shard），未配置或配置了不存在的书库时为主书库
+     */
+    public static String importTarget() {
+        String name = AppConfig.get("import.shard", MAIN).trim();
+        if (shard(name) != null) return name;
+        System.err.println("配置项 import.shard 不是已配置的书库: " + name);
+        return MAIN;
+    }
+
+    /**
+     * 在所有书库中搜索，最多返回 catalog.searchLimit 本
+     */
+    public static int search(String keyword, String kind, Consumer<Hit> consumer) throws SQLException {
+        return search(keyword, kind, LIMIT, consumer);
+    }
+
+    /**
+     * 在所有书库中并行搜索，按完整路径、书库顺序、ID 归并后依次交给 consumer（在调用线程上）
+     * 某个书库出错时打印异常并跳过该书库，全部出错时抛出第一个异常
+     * @param kind 类型，为 null 时不限类型
+     * @param limit 所有书库合计返回的数量上限
+     * @return 返回的书籍数量
+     */
+    public static int search(String keyword, String kind, int limit, Consumer<Hit> consumer) throws SQLException {
+        long t0 = SEARCH.start();
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            List<BlockingQueue<Entry>> queues = new ArrayList<>(SHARDS.size());
+            for (Shard shard : SHARDS) {
+                // 不限长度（SQL 带 LIMIT，最多 limit + 1 项）：查询线程持有读连接时不能等待归并，
+                // 否则同时进行的搜索占满书库的读连接后，彼此都等不到其他书库的第一本
+                BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+                queues.add(queue);
+                SEARCHERS.execute(() -> produce(shard, keyword, kind, limit, queue, done));
+            }
+            int count = merge(queues, limit, consumer);
+            SEARCH.stop(t0, count);
+            return count;
+        } catch (SQLException | RuntimeException e) {
+            SEARCH.fail(t0);
+            throw e;
+        } finally {
+            // 还在查询的书库丢弃剩余的结果
+            done.set(true);
+        }
+    }
+
+    // ================= 并行查询与归并 =================
+
+    /**
+     * 队列中的一项：一本书、出错或结束
+     */
+    private static final class Entry {
+        static final Entry END = new Entry(null, null);
+
+        final Book book;
+        final Exception error;
+
+        Entry(Book book, Exception error) {
+            this.book = book;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 归并时各书库当前排在最前面的一本
+     */
+    private static final class Head implements Comparable<Head> {
+        final int shard;
+        final Book book;
+        final String name;
+
+        Head(int shard, Book book) {
+            this.shard = shard;
+            this.book = book;
+            this.name = book.getName();
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            int c = compareNames(name, other.name);
+            if (c != 0) return c;
+            if (shard != other.shard) return Integer.compare(shard, other.shard);
+            return Integer.compare(book.getId(), other.book.getId());
+        }
+    }
+
+    /**
+     * 在查询线程上执行：把一个书库的有序结果放入队列，搜索结束后丢弃剩余的行
+     * （SQL 带 LIMIT，剩余的行数有限，不必中断查询）
+     */
+    private static void produce(Shard shard, String keyword, String kind, int limit,
+                                BlockingQueue<Entry> queue, AtomicBoolean done) {
+        if (done.get()) return;
+        long t0 = shard.timer.start();
+        long[] rows = {0};
+        Entry last = Entry.END;
+        try {
+            shard.repository().searchSorted(keyword, kind, limit, book -> {
+                if (offer(queue, new Entry(book, null), done)) rows[0]++;
+            });
+            shard.timer.stop(t0, rows[0]);
+        } catch (SQLException | RuntimeException e) {
+            shard.timer.fail(t0);
+            last = new Entry(null, e);
+        }
+        offer(queue, last, done);
+    }
+
+    /**
+     * 放入队列，搜索已结束时丢弃
+     * @return 是否已放入队列
+     */
+    private static boolean offer(BlockingQueue<Entry> queue, Entry entry, AtomicBoolean done) {
+        return !done.get() && queue.offer(entry);
+    }
+
+    /**
+     * k 路归并：每个书库的结果已排序，每次取出各队列队首中最小的一本
+     * 每个书库至少给出第一本（或结束）之后才开始输出
+     */
+    private static int merge(List<BlockingQueue<Entry>> queues, int limit, Consumer<Hit> consumer)
+            throws SQLException {
+        PriorityQueue<Head> heads = new PriorityQueue<>(queues.size());
+        Exception firstError = null;
+        int failed = 0;
+        for (int i = 0; i < queues.size(); i++) {
+            Entry entry = take(queues.get(i));
+            if (entry.error != null) {
+                failed++;
+                if (firstError == null) firstError = entry.error;
+                entry.error.printStackTrace();
+            } else if (entry.book != null) {
+                heads.add(new Head(i, entry.book));
+            }
+        }
+        if (failed == queues.size()) {
+            if (firstError instanceof SQLException) throw (SQLException) firstError;
+            throw (RuntimeException) firstError;
+        }
+
+        int count = 0;
+        while (count < limit && !heads.isEmpty()) {
+            Head head = heads.poll();
+            consumer.accept(new Hit(SHARDS.get(head.shard).name, head.book));
+            count++;
+            Entry entry = take(queues.get(head.shard));
+            if (entry.error != null) {
+                // 已输出的结果仍然有效，只是缺少该书库之后的部分
+                entry.error.printStackTrace();
+            } else if (entry.book != null) {
+                heads.add(new Head(head.shard, entry.book));
+            }
+        }
+        return count;
+    }
+
+    private static Entry take(BlockingQueue<Entry> queue) throws SQLException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("搜索被中断", e);
+        }
+    }
+
+    /**
+     * 按 Unicode 码点比较，与 SQLite 默认的 BINARY 排序（UTF-8 字节顺序）一致；
+     * String.compareTo 按 UTF-16 单元比较，辅助平面字符的顺序与之不同
+     */
+    static int compareNames(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) return Integer.compare(ca, cb);
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    // ================= 配置 =================
+
+    private static List<Shard> parse(String config) {
+        List<Shard> shards = new ArrayList<>();
+        shards.add(new Shard(MAIN, null));
+        for (String entry : config.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int eq = entry.indexOf('=');
+            String name = eq > 0 ? entry.substring(0, eq).trim() : "";
+            String path = eq > 0 ? entry.substring(eq + 1).trim() : "";
+            if (!NAME.matcher(name).matches() || path.isEmpty() || find(shards, name) != null) {
+                System.err.println("配置项 catalog.shards 中的书库无效或重复，已忽略: " + entry);
+                continue;
+            }
+            shards.add(new Shard(name, Paths.get(path)));
+        }
+        return Collections.unmodifiableList(shards);
+    }
+
+    private static Shard find(List<Shard> shards, String name) {
+        for (Shard shard : shards) {
+            if (shard.name.equals(name)) return shard;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,400 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SQLite 连接池
+ * 维护少量长期存活的只读连接和一个专用写连接，
+ * 每个连接按 SQL 字符串缓存 PreparedStatement，避免每次操作都重新打开数据库文件。
+ * 新连接按 StorageProfile 设置 PRAGMA；WAL 模式下由后台线程定期执行被动检查点，
+ * 写连接提交时不必自己承担整个检查点
+ */
+public class ConnectionPool {
+    private static final String DEFAULT_URL = "jdbc:sqlite:kindlebooks.db";
+    // 读连接数量：SQLite 单文件数据库，少量读连接即可
+    private static final int DEFAULT_READERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static volatile ConnectionPool defaultPool;
+
+    // 打开新连接（含执行 PRAGMA）、等待空闲读连接和等待写锁的耗时
+    private static final Metrics.Timer CONNECT = Metrics.timer("ConnectionPool.connect");
+    private static final Metrics.Timer ACQUIRE_READER = Metrics.timer("ConnectionPool.readerWait");
+    private static final Metrics.Timer WRITE_LOCK = Metrics.timer("ConnectionPool.writeLockWait");
+
+    static {
+        // 确保驱动加载
+        try { Class.forName("org.sqlite.JDBC"); } catch (ClassNotFoundException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * 连接上的一段数据库操作
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T apply(PooledConnection conn) throws SQLException;
+    }
+
+    /**
+     * 池化连接：包装底层 Connection，并缓存 PreparedStatement
+     * 缓存的语句由连接池负责关闭，调用方只需关闭 ResultSet
+     */
+    public static class PooledConnection {
+        private final Connection conn;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+        // 取出时目录缓存的代数（见 Directories），-1 表示不写入缓存
+        long generation = -1;
+
+        PooledConnection(Connection conn) { this.conn = conn; }
+
+        /**
+         * 获取（或创建）该 SQL 对应的预编译语句，参数已清空
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null || stmt.isClosed()) {
+                stmt = conn.prepareStatement(sql);
+                statements.put(sql, stmt);
+            } else {
+                stmt.clearParameters();
+            }
+            return stmt;
+        }
+
+        /**
+         * 创建一次性的 Statement（DDL、PRAGMA 等），调用方负责关闭
+         */
+        public Statement createStatement() throws SQLException {
+            return conn.createStatement();
+        }
+
+        public Connection connection() { return conn; }
+
+        void close() {
+            for (PreparedStatement stmt : statements.values()) {
+                try { stmt.close(); } catch (SQLException ignored) { }
+            }
+            statements.clear();
+            try { conn.close(); } catch (SQLException e) { e.printStackTrace(); }
+        }
+    }
+
+    // busy_timeout 之后的重试等待时间基数（毫秒），每次翻倍
+    private static final long RETRY_BACKOFF_MILLIS = 50;
+
+    private final String url;
+    private final int maxReaders;
+    private final StorageProfile profile;
+    private final BlockingQueue<PooledConnection> idleReaders;
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Directories directories = new Directories();
+    private final List<Runnable> closeHooks = new CopyOnWriteArrayList<>();
+    private PooledConnection writer;
+    private ScheduledExecutorService checkpointer;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, int maxReaders) {
+        this(url, maxReaders, StorageProfile.fromConfig());
+    }
+
+    public ConnectionPool(String url, int maxReaders, StorageProfile profile) {
+        this.url = url;
+        this.maxReaders = maxReaders;
+        this.profile = profile;
+        this.idleReaders = new ArrayBlockingQueue<>(maxReaders);
+    }
+
+    /**
+     * 获取默认数据库 (kindlebooks.db) 的连接池
+     */
+    public static ConnectionPool getDefault() {
+        ConnectionPool pool = defaultPool;
+        if (pool == null) {
+            synchronized (ConnectionPool.class) {
+                pool = defaultPool;
+                if (pool == null) {
+                    pool = new ConnectionPool(DEFAULT_URL, DEFAULT_READERS);
+                    // 结构升级只在连接池创建时执行一次
+                    try { SchemaMigrator.migrate(pool); } catch (SQLException e) { e.printStackTrace(); }
+                    Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "db-pool-shutdown"));
+                    defaultPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 是否为默认数据库的连接池（默认连接池尚未创建时返回 false，不会因此创建它）
+     * 内存索引、变更通知和快照只针对默认数据库，其他书库（见 CatalogShards）的写操作不发出通知
+     */
+    static boolean isDefault(ConnectionPool pool) {
+        return pool != null && pool == defaultPool;
+    }
+
+    public String getUrl() { return url; }
+
+    /**
+     * 该数据库的目录路径缓存
+     */
+    public Directories directories() { return directories; }
+
+    /**
+     * 注册在关闭连接之前执行的任务（例如把缓冲中的数据写入数据库）
+     * JVM 的关闭钩子是并发执行的，需要先于连接关闭的工作应在这里注册
+     */
+    public void beforeClose(Runnable hook) {
+        closeHooks.add(hook);
+    }
+
+    /**
+     * 在某个读连接上执行查询
+     */
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        for (int attempt = 0; ; attempt++) {
+            PooledConnection conn = acquireReader();
+            try {
+                conn.generation = directories.generation();
+                return work.apply(conn);
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt >= profile.getBusyRetries()) throw e;
+            } finally {
+                releaseReader(conn);
+            }
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * 在写连接上执行（自动提交模式），同一时刻只有一个线程写入
+     */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        for (int attempt = 0; ; attempt++) {
+            lockWriter();
+            try {
+                return work.apply(stamp(writer()));
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt >= profile.getBusyRetries()) throw e;
+            } finally {
+                writeLock.unlock();
+            }
+            // 在锁外等待，其他写入可以继续
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * 在写连接上以单个事务执行，出错时回滚
+     * 遇到锁冲突时整个事务回滚后重试，work 可能被执行多次。
+     * 同一线程中嵌套调用时并入外层事务，由外层统一提交或回滚
+     */
+    public <T> T transaction(SqlWork<T> work) throws SQLException {
+        if (writeLock.isHeldByCurrentThread() && !writer().connection().getAutoCommit()) {
+            // 写锁可重入：嵌套的事务若自己提交，外层之前的操作也会被提前提交，出错时外层只回滚一半
+            return work.apply(writer());
+        }
+        for (int attempt = 0; ; attempt++) {
+            lockWriter();
+            try {
+                PooledConnection conn = stamp(writer());
+                Connection raw = conn.connection();
+                raw.setAutoCommit(false);
+                try {
+                    T result = work.apply(conn);
+                    raw.commit();
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    raw.rollback();
+                    // 回滚的事务中可能新建了目录，缓存里的 ID 不再有效
+                    directories.clear();
+                    throw e;
+                } finally {
+                    raw.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                if (!isBusy(e) || attempt >= profile.getBusyRetries()) throw e;
+            } finally {
+                writeLock.unlock();
+            }
+            backoff(attempt);
+        }
+    }
+
+    private void lockWriter() {
+        // 没有竞争时不计时
+        if (writeLock.tryLock()) return;
+        long t0 = WRITE_LOCK.start();
+        writeLock.lock();
+        WRITE_LOCK.stop(t0, 0);
+    }
+
+    /**
+     * SQLITE_BUSY / SQLITE_LOCKED（含扩展错误码）
+     */
+    private static boolean isBusy(SQLException e) {
+        int code = e.getErrorCode() & 0xff;
+        return code == 5 || code == 6;
+    }
+
+    private static void backoff(int attempt) throws SQLException {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS << Math.min(attempt, 6));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待重试时被中断", e);
+        }
+    }
+
+    private PooledConnection stamp(PooledConnection conn) {
+        conn.generation = directories.generation();
+        return conn;
+    }
+
+    private PooledConnection writer() throws SQLException {
+        if (closed) throw new SQLException("连接池已关闭: " + url);
+        if (writer == null) {
+            writer = new PooledConnection(open());
+            startCheckpointer();
+        }
+        return writer;
+    }
+
+    private Connection open() throws SQLException {
+        long t0 = CONNECT.start();
+        Connection conn;
+        try {
+            conn = DriverManager.getConnection(url);
+        } catch (SQLException e) {
+            CONNECT.fail(t0);
+            throw e;
+        }
+        try {
+            profile.apply(conn);
+        } catch (SQLException e) {
+            CONNECT.fail(t0);
+            conn.close();
+            throw e;
+        }
+        CONNECT.stop(t0, 1);
+        return conn;
+    }
+
+    /**
+     * WAL 模式下定期在独立连接上执行 PASSIVE 检查点：
+     * 不等待读写，只把已经没有读者引用的页写回数据库文件，避免 WAL 文件无限增长
+     */
+    private void startCheckpointer() throws SQLException {
+        int seconds = profile.getCheckpointSeconds();
+        if (!profile.isWal() || seconds <= 0) return;
+        PooledConnection conn = new PooledConnection(open());
+        checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA wal_checkpoint(PASSIVE)");
+            } catch (SQLException e) {
+                if (!closed) e.printStackTrace();
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+        beforeClose(() -> {
+            checkpointer.shutdown();
+            try {
+                checkpointer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            conn.close();
+        });
+    }
+
+    private PooledConnection acquireReader() throws SQLException {
+        PooledConnection conn = idleReaders.poll();
+        if (conn != null) return conn;
+
+        synchronized (allReaders) {
+            if (closed) throw new SQLException("连接池已关闭: " + url);
+            if (allReaders.size() < maxReaders) {
+                conn = new PooledConnection(open());
+                allReaders.add(conn);
+                return conn;
+            }
+        }
+        // 所有读连接都在使用中，等待归还
+        long t0 = ACQUIRE_READER.start();
+        try {
+            conn = idleReaders.take();
+            ACQUIRE_READER.stop(t0, 0);
+            return conn;
+        } catch (InterruptedException e) {
+            ACQUIRE_READER.fail(t0);
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待读连接时被中断", e);
+        }
+    }
+
+    /**
+     * 归还读连接；连接池已关闭时直接关闭它
+     */
+    private void releaseReader(PooledConnection conn) {
+        synchronized (allReaders) {
+            if (!closed) {
+                idleReaders.offer(conn);
+                return;
+            }
+            allReaders.remove(conn);
+        }
+        conn.close();
+    }
+
+    /**
+     * 关闭所有连接（程序退出时调用）
+     * 正在使用的读连接不在这里关闭，归还时再关闭
+     */
+    public void close() {
+        for (Runnable hook : closeHooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        closeHooks.clear();
+        synchronized (allReaders) {
+            closed = true;
+            PooledConnection conn;
+            while ((conn = idleReaders.poll()) != null) {
+                allReaders.remove(conn);
+                conn.close();
+            }
+        }
+        writeLock.lock();
+        try {
+            if (writer != null) {
+                if (profile.isWal()) {
+                    // 退出前把 WAL 全部写回并截断
+                    try (Statement stmt = writer.createStatement()) {
+                        stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+                writer.close();
+                writer = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
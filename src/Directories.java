@@ -0,0 +1,117 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * directories 表的缓存
+ * 书籍只保存目录 ID 和文件名，目录路径在这里缓存，每个目录在内存中只有一份。
+ * ID 0 表示没有目录（路径为 ""），不在表中存储。
+ * 清空缓存时代数加一；连接取出时记下当时的代数（见 ConnectionPool），读到的目录只有代数未变时才放入缓存，
+ * 仍在清空或恢复之前的快照上读取的连接不会把旧的 ID 写回缓存。
+ * 路径到 ID 的方向只由写连接填充：没有书籍引用的目录会被删除（prune），读连接的旧快照不能把它写回
+ */
+public class Directories {
+    private final ConcurrentHashMap<String, Integer> idsByPath = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> pathsById = new ConcurrentHashMap<>();
+    // 写入缓存和清空都在 this 上同步
+    private volatile long generation;
+
+    /**
+     * 查找或创建目录，返回目录 ID（只能在写连接上调用）
+     */
+    public int idFor(ConnectionPool.PooledConnection conn, String path) throws SQLException {
+        if (path == null || path.isEmpty()) return 0;
+        Integer cached = idsByPath.get(path);
+        if (cached != null) return cached;
+
+        PreparedStatement insert = conn.prepare("INSERT OR IGNORE INTO directories(path) VALUES(?)");
+        insert.setString(1, path);
+        insert.executeUpdate();
+        PreparedStatement select = conn.prepare("SELECT id FROM directories WHERE path = ?");
+        select.setString(1, path);
+        try (ResultSet rs = select.executeQuery()) {
+            rs.next();
+            int id = rs.getInt(1);
+            remember(conn, id, path, true);
+            return id;
+        }
+    }
+
+    /**
+     * 根据目录 ID 取路径，不存在时返回 ""（不缓存，ID 以后可能被重新使用）
+     */
+    public String pathOf(ConnectionPool.PooledConnection conn, int id) throws SQLException {
+        if (id == 0) return "";
+        String cached = pathsById.get(id);
+        if (cached != null) return cached;
+
+        PreparedStatement select = conn.prepare("SELECT path FROM directories WHERE id = ?");
+        select.setInt(1, id);
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) return "";
+            String path = rs.getString(1);
+            remember(conn, id, path, false);
+            return path;
+        }
+    }
+
+    /**
+     * 如果目录已没有书籍引用，删除它并移出缓存（只能在写连接上调用，在删除或移动书籍之后）
+     * 目录 ID 自增不复用，读连接中残留的 ID -> 路径不会指向别的目录
+     */
+    public void prune(ConnectionPool.PooledConnection conn, int id) throws SQLException {
+        if (id == 0) return;
+        PreparedStatement select = conn.prepare("SELECT path FROM directories WHERE id = ? " +
+                "AND NOT EXISTS (SELECT 1 FROM books WHERE dir_id = ?)");
+        select.setInt(1, id);
+        select.setInt(2, id);
+        String path;
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) return;
+            path = rs.getString(1);
+        }
+        PreparedStatement delete = conn.prepare("DELETE FROM directories WHERE id = ?");
+        delete.setInt(1, id);
+        delete.executeUpdate();
+        forget(id, path);
+    }
+
+    /**
+     * 清空缓存（目录表被清空或整个数据库被替换后调用）
+     */
+    public synchronized void clear() {
+        generation++;
+        idsByPath.clear();
+        pathsById.clear();
+    }
+
+    /**
+     * 当前代数，连接取出时记下
+     */
+    long generation() {
+        return generation;
+    }
+
+    private synchronized void remember(ConnectionPool.PooledConnection conn, int id, String path, boolean byPath) {
+        if (conn.generation != generation) return;
+        // 两个方向共用同一个字符串实例
+        String shared = pathsById.putIfAbsent(id, path);
+        if (byPath) idsByPath.putIfAbsent(shared == null ? path : shared, id);
+    }
+
+    private synchronized void forget(int id, String path) {
+        pathsById.remove(id);
+        idsByPath.remove(path, id);
+    }
+
+    /**
+     * 把完整路径拆成目录前缀和文件名（拼接后与原字符串完全相同）
+     * 以最后一个 ':' 或 '/' 为界，导入时使用的 "./目录:" 前缀会被完整保留
+     * @return {目录前缀, 文件名}，没有分隔符时目录前缀为 ""
+     */
+    public static String[] split(String name) {
+        int cut = Math.max(name.lastIndexOf(':'), name.lastIndexOf('/')) + 1;
+        return new String[]{name.substring(0, cut), name.substring(cut)};
+    }
+}
@@ -0,0 +1,248 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 模糊 / 拼音搜索
+ * 在内存中为文件名和文件名的拼音首字母各建一个 NGramIndex，第一次模糊搜索时从数据库构建，
+ * 之后按 BookEvents 在后台线程增量维护。查找顺序（前面的结果排在前面）：
+ * 拼音首字母（"st" 找到 三体）、文件名子串、全拼（"santi" / "liucixin"）、
+ * 编辑距离 1~2 的近似匹配（"pyhton"、"刘慈心"）、同音字首字母。
+ * 结果数量受配置项 search.fuzzyLimit 限制
+ */
+public class FuzzyIndex {
+    private static final int LIMIT = Math.max(1, AppConfig.getInt("search.fuzzyLimit", 500));
+
+    private static final NGramIndex NAMES = new NGramIndex();
+    private static final NGramIndex INITIALS = new NGramIndex();
+    // 书籍 ID -> 目录前缀（同一目录的书共享一个字符串）
+    private static final Map<Integer, String> DIRS = new ConcurrentHashMap<>();
+
+    // 构建和增量更新都在这个线程上按顺序执行
+    private static final ExecutorService UPDATER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "fuzzy-index");
+        t.setDaemon(true);
+        return t;
+    });
+    private static volatile Future<?> loading;
+
+    static {
+        BookEvents.addListener(FuzzyIndex::booksChanged);
+    }
+
+    /**
+     * 模糊搜索
+     * @param kind 类型，为 null 时不限类型
+     */
+    public static List<Book> search(String keyword, String kind) throws SQLException {
+        awaitUpdates();
+        String q = keyword.trim();
+        Set<Integer> ids = new LinkedHashSet<>();
+        // 纯字母的关键字先当作拼音首字母（"st"），再按原文查找，最后按全拼切分（"santi"）
+        boolean pinyin = isPinyin(q);
+        String lower = q.toLowerCase(Locale.ROOT);
+        if (pinyin && add(ids, byInitials(lower), kind)) return books(ids);
+        if (add(ids, NAMES.search(q), kind)) return books(ids);
+        if (pinyin) {
+            for (String initials : Pinyin.syllableInitials(lower)) {
+                if (add(ids, byInitials(initials), kind)) return books(ids);
+            }
+        }
+
+        int length = q.codePointCount(0, q.length());
+        int maxEdits = length >= 6 ? 2 : length >= 3 ? 1 : 0;
+        if (maxEdits > 0 && add(ids, NAMES.searchApproximate(q, maxEdits), kind)) return books(ids);
+
+        // 输入了同音字：比较首字母（短的首字母串太宽泛，至少三个汉字）
+        String initials = Pinyin.initials(q).trim();
+        if (initials.length() >= 3 && initials.indexOf(' ') < 0) add(ids, byInitials(initials), kind);
+        return books(ids);
+    }
+
+    /**
+     * 按首字母查找，从书名开头或一段汉字开头匹配的排在前面，其次是首字母串较短（书名较短）的
+     */
+    private static int[] byInitials(String initials) {
+        int[] found = INITIALS.search(initials);
+        long[] keyed = new long[found.length];
+        for (int i = 0; i < found.length; i++) {
+            String key = INITIALS.text(found[i]);
+            int rank = 2;
+            int length = (1 << 28) - 1;
+            if (key != null) {
+                int pos = key.indexOf(initials);
+                rank = pos == 0 ? 0 : pos > 0 && key.charAt(pos - 1) == ' ' ? 1 : 2;
+                length = key.length();
+            }
+            // 高位为排序键，低 32 位保存原来的下标（原顺序为 ID 倒序，排序稳定）
+            keyed[i] = ((long) rank << 60) | ((long) Math.min(length, (1 << 28) - 1) << 32) | i;
+        }
+        Arrays.sort(keyed);
+        int[] result = new int[found.length];
+        for (int i = 0; i < keyed.length; i++) result[i] = found[(int) keyed[i]];
+        return result;
+    }
+
+    /**
+     * 按顺序加入符合类型的 ID
+     * @return 已达到数量上限
+     */
+    private static boolean add(Set<Integer> ids, int[] found, String kind) {
+        for (int id : found) {
+            if (ids.size() >= LIMIT) return true;
+            if (kind == null || kind.equals(NAMES.kind(id))) ids.add(id);
+        }
+        return ids.size() >= LIMIT;
+    }
+
+    private static List<Book> books(Set<Integer> ids) {
+        List<Book> books = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            String filename = NAMES.text(id);
+            if (filename == null) continue; // 查找与读取之间被删除
+            books.add(new Book(id, new BookPath(DIRS.get(id), filename), NAMES.kind(id)));
+        }
+        return books;
+    }
+
+    private static boolean isPinyin(String q) {
+        if (q.isEmpty()) return false;
+        for (int i = 0; i < q.length(); i++) {
+            char c = q.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) return false;
+        }
+        return true;
+    }
+
+    // ================= 构建与同步 =================
+
+    /**
+     * 第一次调用时构建索引，并等待此前排队的增量更新完成，保证能搜到刚写入的书
+     */
+    private static void awaitUpdates() throws SQLException {
+        if (loading == null) {
+            synchronized (FuzzyIndex.class) {
+                if (loading == null) loading = UPDATER.submit(FuzzyIndex::load);
+            }
+        }
+        try {
+            UPDATER.submit(() -> { }).get();
+            loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            loading = null; // 下次搜索时重新构建
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 在写入线程上被调用，只把更新排入后台线程；还没有构建过时忽略（构建时会读到最新数据）
+     */
+    private static void booksChanged(BookEvents.Change change) {
+        if (loading == null) return;
+        int[] ids = change.getIds();
+        switch (change.getType()) {
+            case INSERTED:
+                UPDATER.execute(() -> run(FuzzyIndex::catchUp));
+                break;
+            case UPDATED:
+                UPDATER.execute(() -> run(() -> {
+                    for (int id : ids) {
+                        Book book = SqliteBookRepository.getDefault().find(id);
+                        if (book == null) remove(id);
+                        else put(book.getId(), book.getPath().getDir(), book.getPath().getFilename(), book.getKind());
+                    }
+                }));
+                break;
+            case DELETED:
+                UPDATER.execute(() -> {
+                    for (int id : ids) remove(id);
+                });
+                break;
+            case CLEARED:
+                // 恢复快照时整个数据库被替换，也以清空通知，清空后重新读取
+                UPDATER.execute(() -> {
+                    NAMES.clear();
+                    INITIALS.clear();
+                    DIRS.clear();
+                    run(FuzzyIndex::catchUp);
+                });
+                break;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Update {
+        void run() throws SQLException;
+    }
+
+    private static void run(Update update) {
+        try {
+            update.run();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Void load() throws SQLException {
+        long start = System.currentTimeMillis();
+        catchUp();
+        System.out.println("模糊搜索索引构建完成: " + NAMES.size() + " 本, 耗时 "
+                + (System.currentTimeMillis() - start) + " ms");
+        return null;
+    }
+
+    /**
+     * 加入 ID 大于索引当前最大值的书
+     */
+    private static void catchUp() throws SQLException {
+        String sql = "SELECT " + QueryDB.BOOK_COLUMNS + " FROM books b WHERE b.id > ? ORDER BY b.id";
+        ConnectionPool pool = ConnectionPool.getDefault();
+        pool.read(conn -> {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, NAMES.maxId());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    put(rs.getInt(1), pool.directories().pathOf(conn, rs.getInt(2)), rs.getString(3), rs.getString(4));
+                }
+            }
+            return null;
+        });
+    }
+
+    private static void put(int id, String dir, String filename, String kind) {
+        NAMES.put(id, filename, kind);
+        DIRS.put(id, dir == null ? "" : dir);
+        String initials = Pinyin.initials(stem(filename));
+        if (initials.isBlank()) INITIALS.remove(id);
+        else INITIALS.put(id, initials, kind);
+    }
+
+    private static void remove(int id) {
+        NAMES.remove(id);
+        INITIALS.remove(id);
+        DIRS.remove(id);
+    }
+
+    /**
+     * 去掉扩展名（.azw3 / .mobi 等）
+     */
+    private static String stem(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 && filename.length() - dot <= 6 ? filename.substring(0, dot) : filename;
+    }
+}
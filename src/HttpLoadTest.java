@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * BookHttpServer 的压测工具
+ * <pre>
+ *   java HttpLoadTest [并发数] [秒数] [写请求比例 0~1] [服务地址]
+ * </pre>
+ * 不指定服务地址时先把默认数据库复制到临时目录，在本进程中以随机端口对副本启动服务，
+ * 写请求留下的书籍、目录和自增序号不会进入真实书库，也不写操作日志，结束后删除副本（副本上不使用内存索引）。
+ * 每个虚拟线程循环发送请求：搜索、分页列表、按 ID 读取，按比例穿插添加 + 删除，
+ * 结束后输出吞吐量、各状态码数量和延迟分位数
+ */
+public class HttpLoadTest {
+    // 搜索关键字，长短混合，覆盖 FTS 和 LIKE 两条路径（"azw3" 这类匹配整个书库的关键字会让结果传输主导测试）
+    private static final String[] KEYWORDS = {"三体", "刘慈欣", "历史", "经济学", "小说", "哈利", "村上春树", "python"};
+    // 副本上的读连接数，与默认连接池相同
+    private static final int READERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double writeRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.05;
+        if (args.length > 3) {
+            run(args[3].replaceAll("/+$", ""), clients, seconds, writeRatio);
+        } else {
+            Path workDir = Files.createTempDirectory("http-load");
+            ConnectionPool pool = null;
+            BookHttpServer server = null;
+            try {
+                Path db = workDir.resolve("kindlebooks.db");
+                Snapshots.copyDefault(db);
+                pool = new ConnectionPool("jdbc:sqlite:" + db, READERS);
+                SchemaMigrator.migrate(pool);
+                // 由系统分配端口
+                server = new BookHttpServer(new SqliteBookRepository(pool), new InetSocketAddress("127.0.0.1", 0),
+                        AppConfig.getInt("http.maxConcurrent", 256));
+                server.start();
+                run("http://127.0.0.1:" + server.getPort(), clients, seconds, writeRatio);
+            } finally {
+                if (server != null) server.stop();
+                if (pool != null) pool.close();
+                deleteTree(workDir);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(String base, int clients, int seconds, double writeRatio) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        int maxId = maxId(client, base);
+        System.out.println("压测 " + base + "：并发 " + clients + "，" + seconds + " 秒，写请求比例 " + writeRatio
+                + "，最大书籍 ID " + maxId);
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<long[]> latencies = new ArrayList<>();
+        Map<Integer, AtomicInteger> statuses = new TreeMap<>();
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                long[] samples = new long[1 << 16];
+                latencies.add(samples);
+                int worker = i;
+                workers.submit(() -> {
+                    int n = 0;
+                    while (System.nanoTime() < deadline) {
+                        long t0 = System.nanoTime();
+                        int status;
+                        try {
+                            status = request(client, base, worker, maxId, writeRatio);
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        long elapsed = System.nanoTime() - t0;
+                        // 每个线程各自记录，超出容量后覆盖最早的样本
+                        samples[1 + n % (samples.length - 1)] = elapsed;
+                        n++;
+                        synchronized (statuses) {
+                            statuses.computeIfAbsent(status, k -> new AtomicInteger()).incrementAndGet();
+                        }
+                    }
+                    samples[0] = n;
+                    return null;
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        long total = 0;
+        List<Long> all = new ArrayList<>();
+        for (long[] samples : latencies) {
+            total += samples[0];
+            int kept = (int) Math.min(samples[0], samples.length - 1);
+            for (int i = 1; i <= kept; i++) all.add(samples[i]);
+        }
+        long[] sorted = all.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        System.out.printf("请求 %d 次，%.0f 次/秒，连接失败 %d 次%n", total, total / elapsedSeconds, failures.get());
+        System.out.println("状态码: " + statuses);
+        if (sorted.length > 0) {
+            System.out.printf("延迟 p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms%n",
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    private static int request(HttpClient client, String base, int worker, int maxId, double writeRatio)
+            throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < writeRatio) {
+            // 添加一本临时书籍再删除，写入经由单个写连接串行执行
+            String name = "压测/worker-" + worker + "-" + random.nextLong(Long.MAX_VALUE) + ".azw3";
+            HttpResponse<String> added = client.send(HttpRequest.newBuilder(URI.create(base + "/books"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"" + name + "\"}")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (added.statusCode() != 201) return added.statusCode();
+            String body = added.body();
+            int id = Integer.parseInt(body.substring(body.indexOf(':') + 1, body.indexOf(',')));
+            return client.send(HttpRequest.newBuilder(URI.create(base + "/books/" + id)).DELETE().build(),
+                    HttpResponse.BodyHandlers.discarding()).statusCode();
+        }
+        String path;
+        switch (random.nextInt(3)) {
+            case 0:
+                path = "/books?q=" + URLEncoder.encode(KEYWORDS[random.nextInt(KEYWORDS.length)], StandardCharsets.UTF_8);
+                break;
+            case 1:
+                path = "/books?limit=100&before=" + (1 + random.nextInt(Math.max(1, maxId)));
+                break;
+            default:
+                path = "/books/" + (1 + random.nextInt(Math.max(1, maxId)));
+                break;
+        }
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).GET().build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static int maxId(HttpClient client, String base) throws Exception {
+        String body = client.send(HttpRequest.newBuilder(URI.create(base + "/books?limit=1")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        int colon = body.indexOf(':');
+        return colon < 0 ? 0 : Integer.parseInt(body.substring(colon + 1, body.indexOf(',')));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Collections.reverseOrder())::iterator) Files.deleteIfExists(p);
+        }
+    }
+}
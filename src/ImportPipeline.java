@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 流水线式导入
+ * 多个解析线程（每个文件一个任务）把解析好的批次放入有界队列，
+ * 由唯一的写线程持有写连接并逐批提交，解析与写库同时进行。
+ * <p>
+ * 重新导入是幂等的：大小和修改时间（或 SHA-256）与上次导入相同的文件直接跳过；
+ * 有变化的文件逐批与上次导入的内容对照，只写入新增的行（每批一个事务，内存占用与文件大小无关），
+ * 整个文件解析完后由 BookSources 删除已从文件中移除且不再属于其他来源的书籍
+ */
+public class ImportPipeline {
+    /**
+     * 解析线程交给写线程的一批书籍
+     * 目录前缀是共享实例，写入时换成 directories 表的 ID
+     */
+    private static class Batch {
+        // 该批书籍关联到的来源 ID
+        final int link;
+        // 索引文件本次出现的书籍 ID（见 BookSources.insert，只在写线程上访问），字符流为 null
+        final BitSet seen;
+        final String[] dirs;
+        final String[] lines;
+        final String[] kinds;
+        int size;
+
+        Batch(int link, BitSet seen, int capacity) {
+            this.link = link;
+            this.seen = seen;
+            dirs = new String[capacity];
+            lines = new String[capacity];
+            kinds = new String[capacity];
+        }
+    }
+
+    /**
+     * 文件结束标记：每个解析任务结束时放入一个，写线程收齐后退出
+     */
+    private static final class End extends Batch {
+        // 来源 ID，未变化被跳过时为 0
+        int source;
+        // 文件已完整解析时为本次的指纹，未变化被跳过或读取失败时为 null
+        Fingerprint fingerprint;
+        // 字符流已完整解析
+        boolean streamDone;
+
+        End(BitSet seen) { super(0, seen, 0); }
+    }
+
+    /**
+     * 一个导入输入：索引文件，或者带来源名称的字符流
+     */
+    private static final class Input {
+        final Path file;
+        final Reader reader;
+        final String source;
+
+        Input(Path file, Reader reader, String source) {
+            this.file = file;
+            this.reader = reader;
+            this.source = source;
+        }
+    }
+
+    /**
+     * 索引文件指纹
+     */
+    private static final class Fingerprint {
+        final String path;
+        final long size;
+        final long mtime;
+        String hash;
+
+        Fingerprint(String path, long size, long mtime) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+    private final int parserThreads;
+
+    public ImportPipeline(ConnectionPool pool, int batchSize, int parserThreads) {
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+        this.parserThreads = Math.max(1, parserThreads);
+    }
+
+    /**
+     * 导入多个索引文件
+     * @param files 索引文件列表，按 CPU 核数并行解析
+     * @param progress 进度回调（在写线程中调用），可为 null
+     * @return 新增的书籍数量
+     * @throws IOException 任一文件读取失败或数据库写入失败（出错的文件中已写入的书籍保留，但不删除书籍、不记录指纹，
+     *                     下次导入时重新比较）
+     */
+    public long run(List<Path> files, SetUpDB.ImportProgress progress) throws IOException {
+        List<Input> inputs = new ArrayList<>();
+        for (Path file : files) inputs.add(new Input(file, null, file.toString()));
+        return execute(inputs, progress);
+    }
+
+    /**
+     * 从字符流导入（例如标准输入）
+     * 字符流没有指纹，只新增书籍、不删除，流中出现过的书籍记为该来源的书籍
+     * @param source 来源名称
+     * @return 新增的书籍数量
+     */
+    public long runStream(Reader reader, String source, SetUpDB.ImportProgress progress) throws IOException {
+        return execute(Collections.singletonList(new Input(null, reader, source)), progress);
+    }
+
+    private long execute(List<Input> files, SetUpDB.ImportProgress progress) throws IOException {
+        if (files.isEmpty()) return 0;
+        int parsers = Math.min(parserThreads, files.size());
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(parsers * 2);
+        AtomicLong linesRead = new AtomicLong();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        // 所有文件共享的目录前缀去重表
+        Map<String, String> dirPool = new ConcurrentHashMap<>();
+
+        Writer writer = new Writer(queue, files.size(), linesRead, failure, progress);
+        Thread writerThread = new Thread(writer, "import-writer");
+        writerThread.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parsers, r -> {
+            Thread t = new Thread(r, "import-parser");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                Input input = files.get(i);
+                End end = new End(input.file == null ? null : new BitSet());
+                executor.execute(() -> {
+                    try {
+                        if (input.file == null) {
+                            // 字符流只新增，直接关联到来源
+                            end.source = BookSources.openSource(pool, input.source);
+                            end.streamDone = parse(end.source, null, new TreeLineParser(input.reader, dirPool),
+                                    queue, linesRead, failure);
+                            return;
+                        }
+                        Fingerprint fingerprint = changedFingerprint(input.file);
+                        if (fingerprint == null) return;
+                        end.source = BookSources.openSource(pool, fingerprint.path);
+                        try (Reader reader = new InputStreamReader(Files.newInputStream(input.file), StandardCharsets.UTF_8)) {
+                            if (parse(end.source, end.seen, new TreeLineParser(reader, dirPool), queue,
+                                    linesRead, failure)) {
+                                end.fingerprint = fingerprint;
+                            }
+                        }
+                    } catch (IOException | SQLException | RuntimeException e) {
+                        failure.compareAndSet(null, new IOException("读取失败: " + input.source, e));
+                    } finally {
+                        put(queue, end, null);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+            executor.shutdownNow();
+        }
+
+        Exception error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw new IOException("写入数据库失败，已新增 " + writer.added + " 本", error);
+        }
+        System.out.println("新增 " + writer.added + " 本，移除 " + writer.removed + " 本，跳过未变化的文件 "
+                + writer.skipped + " 个");
+        return writer.added;
+    }
+
+    /**
+     * 计算文件指纹并与上次导入时比较
+     * 大小和修改时间都相同时不读取文件；只有修改时间变化而内容相同时更新记录的修改时间
+     * @return 文件有变化时返回新指纹，未变化返回 null
+     */
+    private Fingerprint changedFingerprint(Path file) throws IOException, SQLException {
+        Fingerprint current = new Fingerprint(file.toAbsolutePath().normalize().toString(),
+                Files.size(file), Files.getLastModifiedTime(file).toMillis());
+        Fingerprint previous = pool.read(conn -> {
+            PreparedStatement pstmt = conn.prepare("SELECT size, mtime, hash FROM import_files WHERE path = ?");
+            pstmt.setString(1, current.path);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return null;
+                Fingerprint fp = new Fingerprint(current.path, rs.getLong(1), rs.getLong(2));
+                fp.hash = rs.getString(3);
+                return fp;
+            }
+        });
+        if (previous != null && previous.size == current.size && previous.mtime == current.mtime) return null;
+
+        current.hash = sha256(file);
+        if (previous != null && current.hash.equals(previous.hash)) {
+            pool.write(conn -> {
+                PreparedStatement pstmt = conn.prepare("UPDATE import_files SET size = ?, mtime = ? WHERE path = ?");
+                pstmt.setLong(1, current.size);
+                pstmt.setLong(2, current.mtime);
+                pstmt.setString(3, current.path);
+                return pstmt.executeUpdate();
+            });
+            return null;
+        }
+        return current;
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 解析一个索引文件，每满一批放入队列
+     * @return 文件已完整解析并全部放入队列
+     */
+    private boolean parse(int link, BitSet seen, TreeLineParser parser, BlockingQueue<Batch> queue,
+                          AtomicLong linesRead, AtomicReference<Exception> failure) throws IOException {
+        Batch[] current = {new Batch(link, seen, batchSize)};
+        long[] reported = {0};
+        try {
+            parser.parse((dir, line, kind) -> {
+                Batch batch = current[0];
+                batch.dirs[batch.size] = dir;
+                batch.lines[batch.size] = line;
+                batch.kinds[batch.size] = kind;
+                batch.size++;
+                if (batch.size == batchSize) {
+                    linesRead.addAndGet(parser.lines() - reported[0]);
+                    reported[0] = parser.lines();
+                    // 写线程已失败时中止解析
+                    if (!put(queue, batch, failure)) throw new Cancelled();
+                    current[0] = new Batch(link, seen, batchSize);
+                }
+            });
+        } catch (Cancelled e) {
+            return false;
+        }
+        linesRead.addAndGet(parser.lines() - reported[0]);
+        return current[0].size == 0 || put(queue, current[0], failure);
+    }
+
+    /**
+     * 用于提前结束解析
+     */
+    private static final class Cancelled extends RuntimeException {
+        Cancelled() { super(null, null, false, false); }
+    }
+
+    /**
+     * 放入队列；写线程已失败时放弃（结束标记除外，必须送达）
+     */
+    private static boolean put(BlockingQueue<Batch> queue, Batch batch, AtomicReference<Exception> failure) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (failure != null && failure.get() != null) return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 写线程：独占写连接
+     * 每个批次在一个事务中写入书籍表，文件结束时在一个事务中删除已从文件中移除的书籍
+     */
+    private final class Writer implements Runnable {
+        private final BlockingQueue<Batch> queue;
+        private final int producers;
+        private final AtomicLong linesRead;
+        private final AtomicReference<Exception> failure;
+        private final SetUpDB.ImportProgress progress;
+        volatile long added;
+        volatile long removed;
+        volatile int skipped;
+
+        Writer(BlockingQueue<Batch> queue, int producers, AtomicLong linesRead,
+               AtomicReference<Exception> failure, SetUpDB.ImportProgress progress) {
+            this.queue = queue;
+            this.producers = producers;
+            this.linesRead = linesRead;
+            this.failure = failure;
+            this.progress = progress;
+        }
+
+        @Override
+        public void run() {
+            int finished = 0;
+            try {
+                while (finished < producers) {
+                    Batch batch = queue.take();
+                    if (batch instanceof End) finished++;
+                    // 出错后继续取出剩余批次，让解析线程尽快结束
+                    if (failure.get() != null) continue;
+                    try {
+                        if (batch instanceof End) {
+                            End end = (End) batch;
+                            if (end.fingerprint != null) finishFile(end.source, end.seen, end.fingerprint);
+                            else if (end.streamDone) BookSources.touch(pool, end.source);
+                            else skipped++;
+                        } else {
+                            insert(batch);
+                        }
+                        if (progress != null) progress.onProgress(linesRead.get(), added);
+                    } catch (SQLException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private void insert(Batch batch) throws SQLException {
+            BookSources.Result result = BookSources.insert(pool, batch.link, batch.seen, batch.dirs, batch.lines,
+                    batch.kinds, batch.size);
+            added += result.inserted.size();
+            result.publish();
+        }
+
+        /**
+         * 文件已全部写入：删除已从文件中移除的书籍并记录指纹
+         */
+        private void finishFile(int source, BitSet seen, Fingerprint fingerprint) throws SQLException {
+            BookSources.Result result = BookSources.finishReplace(pool, source, seen,
+                    fingerprint.size, fingerprint.mtime, fingerprint.hash);
+            removed += result.deleted.size();
+            result.publish();
+        }
+    }
+}
@@ -0,0 +1,457 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 书库目录实时同步
+ * 直接扫描真实的书库目录代替 tree 文本导入：添加目录时用 ForkJoin 并行扫描整个目录树，
+ * 之后通过 WatchService 监视所有子目录，文件的新增和删除先在内存中合并，
+ * 安静 sync.debounceMillis 毫秒后（持续变化时最多等待 10 倍）在一个事务中批量写入。
+ * 每个目录是 BookSources 中的一个来源，书名为文件的完整路径（分隔符统一为 '/'）
+ */
+public class LibrarySync {
+    private static final long DEBOUNCE_MILLIS = Math.max(10, AppConfig.getInt("sync.debounceMillis", 500));
+    private static final long MAX_DELAY_MILLIS = DEBOUNCE_MILLIS * 10;
+    private static final int BATCH_SIZE = Math.max(1, AppConfig.getInt("import.batchSize", 5000));
+
+    private static LibrarySync instance;
+
+    /**
+     * 监视中的一个目录
+     */
+    private static final class Watched {
+        final Path root;
+        final Path dir;
+
+        Watched(Path root, Path dir) {
+            this.root = root;
+            this.dir = dir;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final WatchService watcher;
+    private final Map<WatchKey, Watched> keys = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> keysByDir = new ConcurrentHashMap<>();
+    private final List<Path> roots = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "library-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 待写入的变化：文件路径 -> 是否存在（按根目录分组，同一路径只保留最后一次变化），由 this 保护
+    private Map<Path, Map<Path, Boolean>> pending = new HashMap<>();
+    // 已从目录树移除的子目录（按根目录分组）
+    private Map<Path, List<Path>> pendingDirs = new HashMap<>();
+    private ScheduledFuture<?> flushTask;
+    private long firstPendingAt;
+
+    private LibrarySync(ConnectionPool pool) throws IOException {
+        this.pool = pool;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(this::watchLoop, "library-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 全局同步实例（第一次调用时创建）
+     */
+    public static synchronized LibrarySync getDefault() throws IOException {
+        if (instance == null) {
+            ConnectionPool pool = ConnectionPool.getDefault();
+            instance = new LibrarySync(pool);
+            pool.beforeClose(instance::close);
+        }
+        return instance;
+    }
+
+    /**
+     * 按配置项 sync.roots（多个目录用系统路径分隔符隔开）在后台开始同步，未配置时不做任何事
+     */
+    public static void startConfigured() {
+        String value = AppConfig.get("sync.roots", null);
+        if (value == null) return;
+        Thread starter = new Thread(() -> {
+            for (String root : value.split(File.pathSeparator)) {
+                if (root.trim().isEmpty()) continue;
+                try {
+                    getDefault().addRoot(Paths.get(root.trim()));
+                } catch (IOException | SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "library-scan");
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    /**
+     * 开始同步一个书库目录：并行扫描整个目录树，与数据库中该目录的书籍比较并更新，之后持续监视
+     * @return 扫描后新增的书籍数量
+     */
+    public long addRoot(Path root) throws IOException, SQLException {
+        Path dir = root.toAbsolutePath().normalize();
+        if (!Files.isDirectory(dir)) throw new IOException("不是目录: " + dir);
+        if (roots.contains(dir)) return 0;
+        roots.add(dir);
+        // 扫描与合并写入在同一线程中依次执行，扫描期间的变化在扫描结果写入之后才应用
+        Future<Long> scan = flusher.submit(() -> rescan(dir));
+        try {
+            return scan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("扫描被中断: " + dir, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw new IOException("扫描失败: " + dir, e.getCause());
+        }
+    }
+
+    /**
+     * 当前同步中的目录
+     */
+    public List<Path> getRoots() {
+        return new ArrayList<>(roots);
+    }
+
+    /**
+     * 完整扫描一个根目录（首次同步或事件丢失后，在 library-sync 线程中执行）
+     */
+    private long rescan(Path root) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        int source = BookSources.openSource(pool, sourceOf(root));
+        Stager stager = new Stager(source);
+        ForkJoinPool scanners = new ForkJoinPool();
+        try {
+            scanners.invoke(new ScanTask(root, root, stager));
+            stager.flush();
+            BookSources.Result result = BookSources.finishReplace(pool, source, stager.seen, null, null, null);
+            result.publish();
+            BookSearchIndex.catchUp();
+            System.out.println("同步目录 " + root + ": 扫描 " + stager.total + " 本，新增 " + stager.inserted
+                    + " 本，移除 " + result.deleted.size() + " 本，耗时 " + (System.currentTimeMillis() - start) + " ms");
+            return stager.inserted;
+        } catch (RuntimeException e) {
+            // ScanTask 中的受检异常被包装后抛出（ForkJoin 可能再包装一层）
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof SQLException) throw (SQLException) cause;
+            }
+            throw e;
+        } finally {
+            scanners.shutdown();
+        }
+    }
+
+    /**
+     * 来源名：根目录的绝对路径
+     */
+    private static String sourceOf(Path root) {
+        return root.toString();
+    }
+
+    /**
+     * 书籍的 {目录前缀, 文件名}
+     */
+    private static String[] nameOf(Path file) {
+        return new String[]{slashed(file.getParent()) + "/", file.getFileName().toString()};
+    }
+
+    private static String slashed(Path path) {
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 把扫描结果按批写入书籍表（多个扫描线程共用）
+     */
+    private final class Stager {
+        final int source;
+        // 本次扫描到的书籍 ID
+        final BitSet seen = new BitSet();
+        final String[] dirs = new String[BATCH_SIZE];
+        final String[] names = new String[BATCH_SIZE];
+        final String[] kinds = new String[BATCH_SIZE];
+        int size;
+        long total;
+        long inserted;
+
+        Stager(int source) { this.source = source; }
+
+        synchronized void add(String dir, String name, String kind) {
+            dirs[size] = dir;
+            names[size] = name;
+            kinds[size] = kind;
+            size++;
+            total++;
+            if (size == BATCH_SIZE) flush();
+        }
+
+        synchronized void flush() {
+            if (size == 0) return;
+            try {
+                BookSources.Result result = BookSources.insert(pool, source, seen, dirs, names, kinds, size);
+                inserted += result.inserted.size();
+                result.publish();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * 并行扫描一个目录：先注册监视再列出内容，扫描期间新建的文件不会遗漏；子目录分叉为新任务
+     */
+    private final class ScanTask extends RecursiveAction {
+        private final Path root;
+        private final Path dir;
+        private final Stager stager;
+
+        ScanTask(Path root, Path dir, Stager stager) {
+            this.root = root;
+            this.dir = dir;
+            this.stager = stager;
+        }
+
+        @Override
+        protected void compute() {
+            List<ScanTask> children = new ArrayList<>();
+            try {
+                register(root, dir);
+                String prefix = slashed(dir) + "/";
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    for (Path child : stream) {
+                        if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                            children.add(new ScanTask(root, child, stager));
+                        } else {
+                            String name = child.getFileName().toString();
+                            String kind = TreeLineParser.kindOf(name);
+                            if (kind != null) stager.add(prefix, name, kind);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            invokeAll(children);
+        }
+    }
+
+    private void register(Path root, Path dir) throws IOException {
+        WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        keys.put(key, new Watched(root, dir));
+        keysByDir.put(dir, key);
+    }
+
+    // ================= 监视与合并写入 =================
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Watched watched = keys.get(key);
+                if (watched != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        handle(watched, event);
+                    }
+                }
+                if (!key.reset()) {
+                    keys.remove(key);
+                    if (watched == null) continue;
+                    // 目录已被删除。父目录的删除事件可能在这之后才处理，那时已认不出它是目录，
+                    // 因此在这里移除其中的书籍（已重新创建并注册的目录除外；根目录被卸载时不移除）
+                    if (keysByDir.get(watched.dir) == key && !watched.dir.equals(watched.root)) {
+                        removeDirectory(watched.root, watched.dir);
+                    } else {
+                        keysByDir.remove(watched.dir, key);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 停止监视
+        }
+    }
+
+    private void handle(Watched watched, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // 事件丢失，重新扫描整个根目录
+            flusher.execute(() -> {
+                try {
+                    rescan(watched.root);
+                } catch (IOException | SQLException e) {
+                    e.printStackTrace();
+                }
+            });
+            return;
+        }
+        Path child = watched.dir.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                addDirectory(watched.root, child);
+            } else if (TreeLineParser.kindOf(child.getFileName().toString()) != null) {
+                changed(watched.root, child, true);
+            }
+        } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+            if (keysByDir.containsKey(child)) {
+                removeDirectory(watched.root, child);
+            } else if (TreeLineParser.kindOf(child.getFileName().toString()) != null) {
+                changed(watched.root, child, false);
+            }
+        }
+    }
+
+    /**
+     * 新出现的目录（新建或移入）：注册监视并把其中已有的书籍加入待写入
+     */
+    private void addDirectory(Path root, Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.forEach(path -> {
+                try {
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        register(root, path);
+                    } else if (TreeLineParser.kindOf(path.getFileName().toString()) != null) {
+                        changed(root, path, true);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void removeDirectory(Path root, Path dir) {
+        keysByDir.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(dir)) return false;
+            entry.getValue().cancel();
+            keys.remove(entry.getValue());
+            return true;
+        });
+        synchronized (this) {
+            Map<Path, Boolean> files = pending.get(root);
+            if (files != null) files.keySet().removeIf(path -> path.startsWith(dir));
+            pendingDirs.computeIfAbsent(root, r -> new ArrayList<>()).add(dir);
+            scheduleFlush();
+        }
+    }
+
+    private synchronized void changed(Path root, Path file, boolean exists) {
+        pending.computeIfAbsent(root, r -> new LinkedHashMap<>()).put(file, exists);
+        scheduleFlush();
+    }
+
+    /**
+     * 每次变化都推迟写入，但距第一条未写入的变化不超过 MAX_DELAY_MILLIS
+     */
+    private void scheduleFlush() {
+        long now = System.currentTimeMillis();
+        if (flushTask == null) {
+            firstPendingAt = now;
+        } else if (now - firstPendingAt < MAX_DELAY_MILLIS) {
+            flushTask.cancel(false);
+        } else {
+            return;
+        }
+        flushTask = flusher.schedule(this::flush, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        Map<Path, Map<Path, Boolean>> files;
+        Map<Path, List<Path>> dirs;
+        synchronized (this) {
+            files = pending;
+            dirs = pendingDirs;
+            pending = new HashMap<>();
+            pendingDirs = new HashMap<>();
+            flushTask = null;
+        }
+        try {
+            for (Path root : roots) {
+                Map<Path, Boolean> changes = files.getOrDefault(root, Map.of());
+                List<Path> removedDirs = dirs.getOrDefault(root, List.of());
+                if (changes.isEmpty() && removedDirs.isEmpty()) continue;
+                apply(root, changes, removedDirs);
+            }
+            BookSearchIndex.catchUp();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void apply(Path root, Map<Path, Boolean> changes, List<Path> removedDirs) throws SQLException {
+        List<String[]> removed = new ArrayList<>();
+        int count = 0;
+        String[] dirNames = new String[changes.size()];
+        String[] names = new String[changes.size()];
+        String[] kinds = new String[changes.size()];
+        for (Map.Entry<Path, Boolean> entry : changes.entrySet()) {
+            String[] name = nameOf(entry.getKey());
+            // 合并期间可能又被删除/重建，以文件当前是否存在为准
+            if (entry.getValue() && Files.exists(entry.getKey(), LinkOption.NOFOLLOW_LINKS)) {
+                dirNames[count] = name[0];
+                names[count] = name[1];
+                kinds[count] = TreeLineParser.kindOf(name[1]);
+                count++;
+            } else {
+                removed.add(name);
+            }
+        }
+        List<String> removedPrefixes = new ArrayList<>();
+        for (Path dir : removedDirs) removedPrefixes.add(slashed(dir) + "/");
+
+        BookSources.Result result = BookSources.update(pool, sourceOf(root), dirNames, names, kinds, count,
+                removed, removedPrefixes);
+        result.publish();
+    }
+
+    /**
+     * 停止监视，写入尚未写入的变化（关闭连接池前调用）
+     */
+    public void close() {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 日志保留与归档
+ * 后台定期检查 logs 表，超出保留条数 (log.maxRows) 或保留天数 (log.maxAgeDays) 的旧日志
+ * 按 ID 顺序写入归档目录下的 gzip 压缩 NDJSON 分段文件（每行一条 JSON），然后从表中删除。
+ * 分段文件按 ID 范围命名，先写临时文件再改名，然后删除其中的日志。每次归档从归档目录中已有的最大 ID 之后继续：
+ * 改名后、删除前退出时，重新归档只删除这些已归档的日志，即使保留范围已变化也不会写出重叠的分段（日志 ID 自增不复用）
+ */
+public class LogArchiver {
+    private static final int MAX_ROWS = AppConfig.getInt("log.maxRows", 100000);
+    private static final int MAX_AGE_DAYS = AppConfig.getInt("log.maxAgeDays", 0);
+    private static final int INTERVAL_MINUTES = Math.max(1, AppConfig.getInt("log.archiveIntervalMinutes", 10));
+    private static final Path ARCHIVE_DIR = Paths.get(AppConfig.get("log.archiveDir", "logs-archive"));
+    // 每个分段文件最多包含的日志条数
+    private static final int SEGMENT_ROWS = 10000;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("logs-(\\d{10})-(\\d{10})\\.ndjson\\.gz");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * 启动后台归档任务（启动时执行一次，之后每隔 log.archiveIntervalMinutes 分钟执行）
+     * 两项保留限制都不大于 0 时不启动
+     */
+    public static synchronized void start() {
+        if (scheduler != null || (MAX_ROWS <= 0 && MAX_AGE_DAYS <= 0)) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                int archived = archiveNow();
+                if (archived > 0) System.out.println("已归档 " + archived + " 条旧日志到 " + ARCHIVE_DIR);
+            } catch (SQLException | IOException e) {
+                e.printStackTrace();
+            }
+        }, 0, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 立即归档超出保留范围的日志
+     * @return 归档的日志条数
+     */
+    public static synchronized int archiveNow() throws SQLException, IOException {
+        ConnectionPool pool = ConnectionPool.getDefault();
+        int archived = archivedMaxId();
+        if (archived > 0) {
+            // 上次写完分段后没来得及删除的日志已在归档中
+            pool.write(conn -> {
+                PreparedStatement pstmt = conn.prepare("DELETE FROM logs WHERE id <= ?");
+                pstmt.setInt(1, archived);
+                return pstmt.executeUpdate();
+            });
+        }
+        int cutoff = cutoffId(pool);
+        int total = 0;
+        int lastId = archived;
+        while (true) {
+            int from = lastId;
+            Segment segment = pool.read(conn -> readSegment(conn, from, cutoff));
+            if (segment.count == 0) break;
+            writeSegment(segment);
+            int to = segment.lastId;
+            pool.write(conn -> {
+                PreparedStatement pstmt = conn.prepare("DELETE FROM logs WHERE id > ? AND id <= ?");
+                pstmt.setInt(1, from);
+                pstmt.setInt(2, to);
+                return pstmt.executeUpdate();
+            });
+            total += segment.count;
+            lastId = to;
+        }
+        return total;
+    }
+
+    /**
+     * 归档目录中已有分段的最大日志 ID，没有分段时返回 0
+     */
+    private static int archivedMaxId() throws IOException {
+        if (!Files.isDirectory(ARCHIVE_DIR)) return 0;
+        int max = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(ARCHIVE_DIR, "logs-*.ndjson.gz")) {
+            for (Path file : files) {
+                Matcher m = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (m.matches()) max = Math.max(max, Integer.parseInt(m.group(2)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 需要归档的最大日志 ID（ID 不大于它的都归档），没有需要归档的返回 0
+     */
+    private static int cutoffId(ConnectionPool pool) throws SQLException {
+        return pool.read(conn -> {
+            int cutoff = 0;
+            if (MAX_ROWS > 0) {
+                // 按 ID 倒序第 MAX_ROWS + 1 条及更早的日志
+                PreparedStatement pstmt = conn.prepare("SELECT id FROM logs ORDER BY id DESC LIMIT 1 OFFSET ?");
+                pstmt.setInt(1, MAX_ROWS);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) cutoff = rs.getInt(1);
+                }
+            }
+            if (MAX_AGE_DAYS > 0) {
+                // log_time 格式固定，可以按字符串比较
+                PreparedStatement pstmt = conn.prepare("SELECT MAX(id) FROM logs WHERE log_time < ?");
+                pstmt.setString(1, LocalDateTime.now().minusDays(MAX_AGE_DAYS).format(TIME_FORMAT));
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) cutoff = Math.max(cutoff, rs.getInt(1));
+                }
+            }
+            return cutoff;
+        });
+    }
+
+    /**
+     * 一个分段：已编码的 NDJSON 内容和 ID 范围
+     */
+    private static final class Segment {
+        final StringBuilder lines = new StringBuilder();
+        int firstId;
+        int lastId;
+        int count;
+    }
+
+    private static Segment readSegment(ConnectionPool.PooledConnection conn, int afterId, int cutoff) throws SQLException {
+        Segment segment = new Segment();
+        PreparedStatement pstmt = conn.prepare(
+                "SELECT id, log_time, action, details FROM logs WHERE id > ? AND id <= ? ORDER BY id LIMIT ?");
+        pstmt.setInt(1, afterId);
+        pstmt.setInt(2, cutoff);
+        pstmt.setInt(3, SEGMENT_ROWS);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                if (segment.count == 0) segment.firstId = id;
+                segment.lastId = id;
+                segment.count++;
+                StringBuilder sb = segment.lines;
+                sb.append("{\"id\":").append(id);
+                sb.append(",\"time\":");
+                appendJson(sb, rs.getString(2));
+                sb.append(",\"action\":");
+                appendJson(sb, rs.getString(3));
+                sb.append(",\"details\":");
+                appendJson(sb, rs.getString(4));
+                sb.append("}\n");
+            }
+        }
+        return segment;
+    }
+
+    private static void writeSegment(Segment segment) throws IOException {
+        Files.createDirectories(ARCHIVE_DIR);
+        String name = String.format("logs-%010d-%010d.ndjson.gz", segment.firstId, segment.lastId);
+        Path target = ARCHIVE_DIR.resolve(name);
+        Path tmp = ARCHIVE_DIR.resolve(name + ".tmp");
+        try (Writer out = new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8)) {
+            out.append(segment.lines);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 以 JSON 字符串形式追加（null 写为 null）
+     */
+    static void appendJson(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 操作耗时统计
+ * 每个被统计的操作对应一个 Timer，记录延迟直方图、返回行数和出错次数，
+ * 可在“性能统计”选项卡中查看，或导出为 JSON / Prometheus 文本格式（HTTP 服务的 /metrics）。
+ * 用法：
+ * <pre>
+ *   private static final Metrics.Timer SEARCH = Metrics.timer("QueryDB.searchBooks");
+ *   long t0 = SEARCH.start();
+ *   ...
+ *   SEARCH.stop(t0, rows);     // 出错时 SEARCH.fail(t0)
+ * </pre>
+ * metrics.enabled=false 时 start/stop 只检查一个常量，不读时钟也不写任何数据
+ */
+public class Metrics {
+    static final boolean ENABLED = AppConfig.getBoolean("metrics.enabled", true);
+
+    // 按名称排序，同一模块的操作排在一起
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    // 其他模块登记的计数和当前值（如缓存命中次数），导出时读取
+    private static final Map<String, Value> VALUES = new ConcurrentSkipListMap<>();
+
+    /**
+     * 一个操作的统计
+     */
+    public static final class Timer {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+
+        /**
+         * 开始计时
+         * @return 传给 stop / fail 的起始时间
+         */
+        public long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        /**
+         * 操作成功完成
+         * @param rowCount 读取或影响的行数
+         */
+        public void stop(long start, long rowCount) {
+            if (!ENABLED) return;
+            histogram.record(System.nanoTime() - start);
+            rows.add(rowCount);
+        }
+
+        /**
+         * 操作失败（耗时同样计入直方图）
+         */
+        public void fail(long start) {
+            if (!ENABLED) return;
+            histogram.record(System.nanoTime() - start);
+            errors.increment();
+        }
+
+        Snapshot snapshot() {
+            long[] p = histogram.percentiles(0.5, 0.9, 0.99, 0.999);
+            return new Snapshot(name, histogram.count(), errors.sum(), rows.sum(), histogram.sum(), histogram.max(),
+                    p[0], p[1], p[2], p[3]);
+        }
+
+        void reset() {
+            histogram.reset();
+            rows.reset();
+            errors.reset();
+        }
+    }
+
+    /**
+     * 某一时刻的统计值（时间单位为纳秒）
+     */
+    public static final class Snapshot {
+        public final String name;
+        public final long count;
+        public final long errors;
+        public final long rows;
+        public final long sumNanos;
+        public final long maxNanos;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long p999;
+
+        Snapshot(String name, long count, long errors, long rows, long sumNanos, long maxNanos,
+                 long p50, long p90, long p99, long p999) {
+            this.name = name;
+            this.count = count;
+            this.errors = errors;
+            this.rows = rows;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+        }
+
+        public long meanNanos() {
+            return count == 0 ? 0 : sumNanos / count;
+        }
+    }
+
+    /**
+     * 登记的一个数值
+     */
+    public static final class Value {
+        public final String name;
+        public final String type;
+        public final String help;
+        private final LongSupplier supplier;
+
+        Value(String name, String type, String help, LongSupplier supplier) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+            this.supplier = supplier;
+        }
+
+        public long get() {
+            return supplier.getAsLong();
+        }
+    }
+
+    /**
+     * 登记一个在导出时读取的数值
+     * @param name Prometheus 指标名
+     * @param type "counter" 或 "gauge"
+     */
+    public static void value(String name, String type, String help, LongSupplier supplier) {
+        VALUES.put(name, new Value(name, type, help, supplier));
+    }
+
+    public static List<Value> values() {
+        return new ArrayList<>(VALUES.values());
+    }
+
+    /**
+     * 获取（不存在时创建）某个操作的 Timer，通常保存在静态常量中
+     */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 所有至少执行过一次的操作
+     */
+    public static List<Snapshot> snapshot() {
+        List<Snapshot> list = new ArrayList<>();
+        for (Timer timer : TIMERS.values()) {
+            Snapshot s = timer.snapshot();
+            if (s.count > 0) list.add(s);
+        }
+        return list;
+    }
+
+    public static void reset() {
+        for (Timer timer : TIMERS.values()) timer.reset();
+    }
+
+    // ================= 导出 =================
+
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder("{\"enabled\":").append(ENABLED).append(",\"operations\":[");
+        boolean first = true;
+        for (Snapshot s : snapshot()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append("{\"name\":");
+            LogArchiver.appendJson(sb, s.name);
+            sb.append(",\"count\":").append(s.count)
+                    .append(",\"errors\":").append(s.errors)
+                    .append(",\"rows\":").append(s.rows)
+                    .append(",\"meanMs\":").append(millis(s.meanNanos()))
+                    .append(",\"p50Ms\":").append(millis(s.p50))
+                    .append(",\"p90Ms\":").append(millis(s.p90))
+                    .append(",\"p99Ms\":").append(millis(s.p99))
+                    .append(",\"p999Ms\":").append(millis(s.p999))
+                    .append(",\"maxMs\":").append(millis(s.maxNanos))
+                    .append('}');
+        }
+        sb.append("],\"values\":{");
+        first = true;
+        for (Value v : VALUES.values()) {
+            if (!first) sb.append(',');
+            first = false;
+            LogArchiver.appendJson(sb, v.name);
+            sb.append(':').append(v.get());
+        }
+        return sb.append("}}").toString();
+    }
+
+    public static String toPrometheus() {
+        List<Snapshot> snapshots = snapshot();
+        StringBuilder sb = new StringBuilder();
+        sb.append("# HELP kindlebooks_operation_seconds 数据库和界面操作耗时\n");
+        sb.append("# TYPE kindlebooks_operation_seconds summary\n");
+        for (Snapshot s : snapshots) {
+            String op = "op=\"" + escapeLabel(s.name) + "\"";
+            quantile(sb, op, "0.5", s.p50);
+            quantile(sb, op, "0.9", s.p90);
+            quantile(sb, op, "0.99", s.p99);
+            quantile(sb, op, "0.999", s.p999);
+            sb.append("kindlebooks_operation_seconds_sum{").append(op).append("} ").append(seconds(s.sumNanos)).append('\n');
+            sb.append("kindlebooks_operation_seconds_count{").append(op).append("} ").append(s.count).append('\n');
+        }
+        sb.append("# HELP kindlebooks_operation_seconds_max 操作的最大耗时\n");
+        sb.append("# TYPE kindlebooks_operation_seconds_max gauge\n");
+        for (Snapshot s : snapshots) {
+            sb.append("kindlebooks_operation_seconds_max{op=\"").append(escapeLabel(s.name)).append("\"} ")
+                    .append(seconds(s.maxNanos)).append('\n');
+        }
+        sb.append("# HELP kindlebooks_operation_rows_total 操作读取或影响的行数\n");
+        sb.append("# TYPE kindlebooks_operation_rows_total counter\n");
+        for (Snapshot s : snapshots) {
+            sb.append("kindlebooks_operation_rows_total{op=\"").append(escapeLabel(s.name)).append("\"} ")
+                    .append(s.rows).append('\n');
+        }
+        sb.append("# HELP kindlebooks_operation_errors_total 操作出错次数\n");
+        sb.append("# TYPE kindlebooks_operation_errors_total counter\n");
+        for (Snapshot s : snapshots) {
+            sb.append("kindlebooks_operation_errors_total{op=\"").append(escapeLabel(s.name)).append("\"} ")
+                    .append(s.errors).append('\n');
+        }
+        for (Value v : VALUES.values()) {
+            sb.append("# HELP ").append(v.name).append(' ').append(v.help).append('\n');
+            sb.append("# TYPE ").append(v.name).append(' ').append(v.type).append('\n');
+            sb.append(v.name).append(' ').append(v.get()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void quantile(StringBuilder sb, String op, String q, long nanos) {
+        sb.append("kindlebooks_operation_seconds{").append(op).append(",quantile=\"").append(q).append("\"} ")
+                .append(seconds(nanos)).append('\n');
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 1e3) / 1e3;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+}
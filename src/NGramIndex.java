@@ -0,0 +1,338 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 内存 n-gram 倒排索引
+ * 以单字和相邻两字为词项，每个词项对应一个升序的 int[] 书籍 ID 列表，
+ * 中文书名无需分词即可按子串查找；查询时求交集后再逐条校验
+ */
+public class NGramIndex {
+
+    /**
+     * 升序、无重复的 ID 列表
+     */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == 0 || ids[size - 1] < id) {
+                grow();
+                ids[size++] = id;
+                return;
+            }
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            grow();
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) return;
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+        }
+
+        private void grow() {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+        }
+    }
+
+    private final Map<Integer, Postings> postings = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // 按 ID 下标保存原文、小写检索键和类型；被删除的位置为 null
+    private String[] texts = new String[1024];
+    private String[] keys = new String[1024];
+    private String[] kinds = new String[1024];
+    private int maxId;
+    private int count;
+
+    /**
+     * 加入或替换一条记录
+     */
+    public void put(int id, String text, String kind) {
+        if (id <= 0 || text == null) return;
+        lock.writeLock().lock();
+        try {
+            if (id < keys.length && keys[id] != null) removeGrams(id, keys[id]);
+            else count++;
+            ensureCapacity(id);
+            // 无大写字母时 toLowerCase 返回原对象，不额外占用内存
+            String key = text.toLowerCase(Locale.ROOT);
+            texts[id] = text;
+            keys[id] = key;
+            kinds[id] = kind;
+            maxId = Math.max(maxId, id);
+            for (int i = 0; i < key.length(); i++) {
+                postings.computeIfAbsent(unigram(key.charAt(i)), k -> new Postings()).add(id);
+                if (i + 1 < key.length()) {
+                    postings.computeIfAbsent(bigram(key.charAt(i), key.charAt(i + 1)), k -> new Postings()).add(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除一条记录
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            if (id <= 0 || id >= keys.length || keys[id] == null) return;
+            removeGrams(id, keys[id]);
+            texts[id] = null;
+            keys[id] = null;
+            kinds[id] = null;
+            count--;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            texts = new String[1024];
+            keys = new String[1024];
+            kinds = new String[1024];
+            maxId = 0;
+            count = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查找包含关键字（忽略大小写）的记录
+     * @return 命中的 ID，按 ID 倒序（新书在前）
+     */
+    public int[] search(String query) {
+        String q = query.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            if (q.isEmpty()) return allIds();
+
+            // 收集查询词项，从最短的列表开始求交集
+            List<Postings> lists = new ArrayList<>();
+            if (q.length() == 1) {
+                Postings p = postings.get(unigram(q.charAt(0)));
+                if (p == null) return new int[0];
+                lists.add(p);
+            } else {
+                for (int i = 0; i + 1 < q.length(); i++) {
+                    Postings p = postings.get(bigram(q.charAt(i), q.charAt(i + 1)));
+                    if (p == null) return new int[0];
+                    lists.add(p);
+                }
+            }
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+            Postings first = lists.get(0);
+            int[] candidates = Arrays.copyOf(first.ids, first.size);
+            int n = candidates.length;
+            for (int l = 1; l < lists.size() && n > 0; l++) {
+                Postings p = lists.get(l);
+                if (p == first) continue;
+                int kept = 0;
+                int from = 0;
+                for (int i = 0; i < n; i++) {
+                    int pos = Arrays.binarySearch(p.ids, from, p.size, candidates[i]);
+                    if (pos >= 0) {
+                        candidates[kept++] = candidates[i];
+                        from = pos + 1;
+                    } else {
+                        from = -pos - 1;
+                    }
+                }
+                n = kept;
+            }
+
+            // 词项全部命中不代表连续出现，需校验子串
+            int[] result = new int[n];
+            int size = 0;
+            for (int i = n - 1; i >= 0; i--) {
+                int id = candidates[i];
+                if (q.length() <= 2 || keys[id].contains(q)) result[size++] = id;
+            }
+            return size == n ? result : Arrays.copyOf(result, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 近似查找：记录中存在与关键字编辑距离不超过 maxEdits 的子串
+     * 先按单字倒排表计数，至少含有 (关键字不同字符数 - maxEdits) 个关键字字符的记录才是候选，
+     * 再用 Myers 位并行算法逐条校验，不必对每条记录计算编辑距离
+     * @return 命中的 ID，编辑距离小的在前，距离相同时按 ID 倒序；关键字超过 64 个字符时按精确查找处理
+     */
+    public int[] searchApproximate(String query, int maxEdits) {
+        String q = query.toLowerCase(Locale.ROOT);
+        int m = q.length();
+        if (maxEdits <= 0 || m == 0 || m > 64) return search(query);
+
+        // 每个不同字符在关键字中出现位置的位掩码
+        Map<Character, Long> peq = new HashMap<>();
+        for (int i = 0; i < m; i++) peq.merge(q.charAt(i), 1L << i, (a, b) -> a | b);
+        int threshold = peq.size() - maxEdits;
+
+        lock.readLock().lock();
+        try {
+            // 候选：命中的不同关键字字符数达到阈值（阈值不大于 0 时任何记录都可能命中，逐条校验）
+            int[] candidates;
+            int n = 0;
+            if (threshold <= 0) {
+                candidates = allIds();
+                n = candidates.length;
+            } else {
+                byte[] hits = new byte[maxId + 1];
+                candidates = new int[Math.min(count, 1024)];
+                for (char c : peq.keySet()) {
+                    Postings p = postings.get(unigram(c));
+                    if (p == null) continue;
+                    for (int i = 0; i < p.size; i++) {
+                        int id = p.ids[i];
+                        if (++hits[id] == threshold) {
+                            if (n == candidates.length) candidates = Arrays.copyOf(candidates, n * 2);
+                            candidates[n++] = id;
+                        }
+                    }
+                }
+            }
+
+            // 校验并按距离分桶
+            long high = 1L << (m - 1);
+            List<List<Integer>> buckets = new ArrayList<>();
+            for (int d = 0; d <= maxEdits; d++) buckets.add(new ArrayList<>());
+            for (int i = 0; i < n; i++) {
+                int id = candidates[i];
+                String key = keys[id];
+                if (key == null) continue;
+                int best = m;
+                long pv = ~0L;
+                long mv = 0;
+                int score = m;
+                for (int j = 0; j < key.length() && best > 0; j++) {
+                    Long mask = peq.get(key.charAt(j));
+                    long eq = mask == null ? 0 : mask;
+                    long xv = eq | mv;
+                    long xh = (((eq & pv) + pv) ^ pv) | eq;
+                    long ph = mv | ~(xh | pv);
+                    long mh = pv & xh;
+                    if ((ph & high) != 0) score++;
+                    else if ((mh & high) != 0) score--;
+                    // 子串匹配可以从文本任意位置开始，左侧边界不进位
+                    ph <<= 1;
+                    mh <<= 1;
+                    pv = mh | ~(xv | ph);
+                    mv = ph & xv;
+                    best = Math.min(best, score);
+                }
+                if (best <= maxEdits) buckets.get(best).add(id);
+            }
+
+            int total = 0;
+            for (List<Integer> bucket : buckets) total += bucket.size();
+            int[] result = new int[total];
+            int size = 0;
+            for (List<Integer> bucket : buckets) {
+                bucket.sort((a, b) -> Integer.compare(b, a));
+                for (int id : bucket) result[size++] = id;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String text(int id) {
+        lock.readLock().lock();
+        try {
+            return id > 0 && id < texts.length ? texts[id] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String kind(int id) {
+        lock.readLock().lock();
+        try {
+            return id > 0 && id < kinds.length ? kinds[id] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前最大的 ID，用于增量同步新插入的记录
+     */
+    public int maxId() {
+        lock.readLock().lock();
+        try {
+            return maxId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] allIds() {
+        int[] result = new int[count];
+        int size = 0;
+        for (int id = maxId; id > 0 && size < count; id--) {
+            if (keys[id] != null) result[size++] = id;
+        }
+        return result;
+    }
+
+    private void removeGrams(int id, String key) {
+        for (int i = 0; i < key.length(); i++) {
+            Postings p = postings.get(unigram(key.charAt(i)));
+            if (p != null) p.remove(id);
+            if (i + 1 < key.length()) {
+                p = postings.get(bigram(key.charAt(i), key.charAt(i + 1)));
+                if (p != null) p.remove(id);
+            }
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < keys.length) return;
+        int length = Math.max(id + 1, keys.length * 2);
+        texts = Arrays.copyOf(texts, length);
+        keys = Arrays.copyOf(keys, length);
+        kinds = Arrays.copyOf(kinds, length);
+    }
+
+    // 单字词项占低 16 位；两字词项高 16 位为第一个字符（书名中不会出现 \0，因此不会冲突）
+    private static int unigram(char c) {
+        return c;
+    }
+
+    private static int bigram(char a, char b) {
+        return (a << 16) | b;
+    }
+}
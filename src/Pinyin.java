@@ -0,0 +1,128 @@
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 汉字拼音首字母
+ * GB2312 一级汉字按拼音排序，按各声母第一个字的区位码划分区间即可得到首字母，
+ * 不需要内置拼音词典。启动时为 U+4E00..U+9FFF 预先计算一张首字母表；
+ * 二级汉字、繁体字和多音字的其他读音没有首字母
+ */
+public class Pinyin {
+    private static final char FIRST = '一';
+    private static final char LAST = '\u9FFF';
+
+    // 各首字母在 GB2312 中第一个字的编码（高字节 * 256 + 低字节），最后一个是一级汉字的结束位置
+    private static final int[] STARTS = {45217, 45253, 45761, 46318, 46826, 47010, 47297, 47614, 48119, 49062,
+            49324, 49896, 50371, 50614, 50622, 50906, 51387, 51446, 52218, 52698, 52980, 53689, 54481, 55290};
+    private static final String LETTERS = "abcdefghjklmnopqrstwxyz";
+
+    // 汉语拼音的全部音节（ü 写作 v）
+    private static final Set<String> SYLLABLES = new HashSet<>(Arrays.asList((
+            "a ai an ang ao ba bai ban bang bao bei ben beng bi bian biao bie bin bing bo bu " +
+            "ca cai can cang cao ce cen ceng cha chai chan chang chao che chen cheng chi chong chou chu chua " +
+            "chuai chuan chuang chui chun chuo ci cong cou cu cuan cui cun cuo " +
+            "da dai dan dang dao de dei den deng di dia dian diao die ding diu dong dou du duan dui dun duo " +
+            "e ei en eng er fa fan fang fei fen feng fo fou fu " +
+            "ga gai gan gang gao ge gei gen geng gong gou gu gua guai guan guang gui gun guo " +
+            "ha hai han hang hao he hei hen heng hong hou hu hua huai huan huang hui hun huo " +
+            "ji jia jian jiang jiao jie jin jing jiong jiu ju juan jue jun " +
+            "ka kai kan kang kao ke kei ken keng kong kou ku kua kuai kuan kuang kui kun kuo " +
+            "la lai lan lang lao le lei leng li lia lian liang liao lie lin ling liu long lou lu lv luan lve lun luo " +
+            "ma mai man mang mao me mei men meng mi mian miao mie min ming miu mo mou mu " +
+            "na nai nan nang nao ne nei nen neng ni nian niang niao nie nin ning niu nong nou nu nv nuan nve nuo " +
+            "o ou pa pai pan pang pao pei pen peng pi pian piao pie pin ping po pou pu " +
+            "qi qia qian qiang qiao qie qin qing qiong qiu qu quan que qun " +
+            "ran rang rao re ren reng ri rong rou ru rua ruan rui run ruo " +
+            "sa sai san sang sao se sen seng sha shai shan shang shao she shei shen sheng shi shou shu shua " +
+            "shuai shuan shuang shui shun shuo si song sou su suan sui sun suo " +
+            "ta tai tan tang tao te teng ti tian tiao tie ting tong tou tu tuan tui tun tuo " +
+            "wa wai wan wang wei wen weng wo wu xi xia xian xiang xiao xie xin xing xiong xiu xu xuan xue xun " +
+            "ya yan yang yao ye yi yin ying yo yong you yu yuan yue yun " +
+            "za zai zan zang zao ze zei zen zeng zha zhai zhan zhang zhao zhe zhei zhen zheng zhi zhong zhou " +
+            "zhu zhua zhuai zhuan zhuang zhui zhun zhuo zi zong zou zu zuan zui zun zuo").split(" ")));
+    private static final Set<String> PREFIXES = new HashSet<>();
+    private static final int MAX_SYLLABLE = 6;
+    // 一个拼音串最多给出的切分方式数
+    private static final int MAX_SPLITS = 16;
+
+    private static final char[] TABLE = new char[LAST - FIRST + 1];
+
+    static {
+        for (String syllable : SYLLABLES) {
+            for (int i = 1; i <= syllable.length(); i++) PREFIXES.add(syllable.substring(0, i));
+        }
+        Charset gb2312 = Charset.forName("GB2312");
+        for (char c = FIRST; c < LAST; c++) {
+            byte[] bytes = String.valueOf(c).getBytes(gb2312);
+            if (bytes.length != 2) continue; // 无法编码时得到 '?'
+            int code = (bytes[0] & 0xFF) << 8 | (bytes[1] & 0xFF);
+            if (code < STARTS[0] || code >= STARTS[STARTS.length - 1]) continue;
+            int pos = Arrays.binarySearch(STARTS, code);
+            TABLE[c - FIRST] = LETTERS.charAt(pos >= 0 ? pos : -pos - 2);
+        }
+    }
+
+    /**
+     * 单个汉字的拼音首字母，没有时返回 0
+     */
+    public static char initial(char c) {
+        return c >= FIRST && c <= LAST ? TABLE[c - FIRST] : 0;
+    }
+
+    /**
+     * 文本中汉字的首字母串，其他字符（连续的算一处）写为一个空格，
+     * 如 "1.三体：死神永生" 得到 " st ssys"
+     */
+    public static String initials(CharSequence text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char initial = initial(text.charAt(i));
+            if (initial != 0) sb.append(initial);
+            else if (sb.length() == 0 || sb.charAt(sb.length() - 1) != ' ') sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把小写拼音串切分为音节，返回每种切分方式对应的首字母串
+     * 最后一个音节可以只输入开头几个字母；至少切出两个音节才有意义（单个音节与普通查找相同），
+     * 如 "santi" 得到 {"st"}，"xian" 得到 xi|an、xia|n 等几种切分各自的首字母
+     */
+    public static Set<String> syllableInitials(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        split(text, 0, new ArrayList<>(), new boolean[text.length()], result);
+        return result;
+    }
+
+    /**
+     * @param dead 已知无法切分到末尾的位置，避免对同一段后缀重复尝试（否则长串的切分次数随长度指数增长）
+     * @return 从 from 起存在切分到末尾的方式
+     */
+    private static boolean split(String text, int from, List<String> segments, boolean[] dead, Set<String> result) {
+        if (result.size() >= MAX_SPLITS) return true;
+        if (from == text.length()) {
+            if (segments.size() < 2) return true;
+            StringBuilder sb = new StringBuilder(segments.size());
+            for (String segment : segments) sb.append(segment.charAt(0));
+            result.add(sb.toString());
+            return true;
+        }
+        if (dead[from]) return false;
+        boolean reached = false;
+        for (int end = Math.min(text.length(), from + MAX_SYLLABLE); end > from; end--) {
+            String segment = text.substring(from, end);
+            boolean last = end == text.length();
+            if (!SYLLABLES.contains(segment) && !(last && PREFIXES.contains(segment))) continue;
+            segments.add(segment);
+            reached |= split(text, end, segments, dead, result);
+            segments.remove(segments.size() - 1);
+        }
+        dead[from] = !reached;
+        return reached;
+    }
+}
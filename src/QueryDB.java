@@ -1,93 +1,331 @@
 import java.sql.*;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 数据库查询与操作工具类
  * 负责处理书籍和日志的 CRUD 操作
+ * 书籍的增删改查由 SqliteBookRepository 实现，这里转换为表格使用的数据格式
  */
 public class QueryDB {
-    private static final String URL = "jdbc:sqlite:kindlebooks.db";
-    // 复用正则逻辑，用于编辑时自动更新类型
-    private static final Pattern SUBNAME = Pattern.compile("\\.(pdf|mobi|epub|azw3|html|txt)$");
+    // 书籍查询统一取这几列，书名由目录前缀和文件名在 Java 端拼接
+    static final String BOOK_COLUMNS = "b.id, b.dir_id, b.filename, b.kind";
 
-    static {
-        // 确保驱动加载
-        try { Class.forName("org.sqlite.JDBC"); } catch (ClassNotFoundException e) { e.printStackTrace(); }
-    }
+    // 各操作的耗时统计
+    private static final Metrics.Timer GET_ALL_BOOKS = Metrics.timer("QueryDB.getAllBooks");
+    private static final Metrics.Timer COUNT_BOOKS = Metrics.timer("QueryDB.countBooks");
+    private static final Metrics.Timer COUNT_AND_MAX_ID = Metrics.timer("QueryDB.getBookCountAndMaxId");
+    private static final Metrics.Timer GET_BOOKS_PAGE = Metrics.timer("QueryDB.getBooksPage");
+    private static final Metrics.Timer GET_BOOKS_PAGE_AT = Metrics.timer("QueryDB.getBooksPageAt");
+    private static final Metrics.Timer GET_KIND_COUNTS = Metrics.timer("QueryDB.getKindCounts");
+    private static final Metrics.Timer GET_BOOK = Metrics.timer("QueryDB.getBook");
+    private static final Metrics.Timer GET_BOOK_ROW = Metrics.timer("QueryDB.getBookRow");
+    private static final Metrics.Timer SEARCH_BOOKS = Metrics.timer("QueryDB.searchBooks");
+    private static final Metrics.Timer FUZZY_SEARCH_BOOKS = Metrics.timer("QueryDB.fuzzySearchBooks");
+    private static final Metrics.Timer UPDATE_BOOK = Metrics.timer("QueryDB.updateBook");
+    private static final Metrics.Timer DELETE_BOOK = Metrics.timer("QueryDB.deleteBook");
+    private static final Metrics.Timer CLEAR_ALL_BOOKS = Metrics.timer("QueryDB.clearAllBooks");
+    private static final Metrics.Timer ADD_LOG = Metrics.timer("QueryDB.addLog");
+    private static final Metrics.Timer ADD_LOGS = Metrics.timer("QueryDB.addLogs");
+    private static final Metrics.Timer GET_ALL_LOGS = Metrics.timer("QueryDB.getAllLogs");
+    private static final Metrics.Timer GET_LOGS_PAGE = Metrics.timer("QueryDB.getLogsPage");
+    private static final Metrics.Timer COUNT_LOGS = Metrics.timer("QueryDB.countLogs");
+    private static final Metrics.Timer DELETE_LOG = Metrics.timer("QueryDB.deleteLog");
+    private static final Metrics.Timer CLEAR_LOGS = Metrics.timer("QueryDB.clearLogs");
 
     // ================= 书籍管理相关方法 =================
 
     /**
      * 获取所有书籍数据
-     * @return Vector<Vector<Object>> 包含 id, name, kind 的二维向量，直接用于 TableModel
+     * @return Vector<Vector<Object>> 包含 id, name (BookPath), kind 的二维向量，直接用于 TableModel
      */
     public static Vector<Vector<Object>> getAllBooks() {
-        // 确保表存在，防止第一次运行报错
-        SetUpDB.initTables();
+        Vector<Vector<Object>> data = new Vector<>();
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books b ORDER BY b.id DESC"; // 倒序排列，新书在前
+        long t0 = GET_ALL_BOOKS.start();
+        try {
+            ConnectionPool.getDefault().read(conn -> {
+                try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+                    while (rs.next()) {
+                        data.add(bookRow(conn, rs));
+                    }
+                }
+                return null;
+            });
+            GET_ALL_BOOKS.stop(t0, data.size());
+        } catch (SQLException e) { GET_ALL_BOOKS.fail(t0); e.printStackTrace(); }
+        return data;
+    }
 
+    /**
+     * 书籍总数
+     */
+    public static int countBooks() {
+        long t0 = COUNT_BOOKS.start();
+        try {
+            int count = ConnectionPool.getDefault().read(conn -> {
+                try (ResultSet rs = conn.prepare("SELECT COUNT(*) FROM books").executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            });
+            COUNT_BOOKS.stop(t0, 1);
+            return count;
+        } catch (SQLException e) { COUNT_BOOKS.fail(t0); e.printStackTrace(); return 0; }
+    }
+
+    /**
+     * 书籍总数和最大 ID（同一次查询，结果互相一致）
+     * @return {count, maxId}
+     */
+    public static int[] getBookCountAndMaxId() {
+        return getBookCountAndMaxId(null);
+    }
+
+    /**
+     * 某一类型的书籍数量和最大 ID
+     * 数量取自 kind_counts 表，最大 ID 经 (kind, id) 索引直接定位，都不扫描书籍表
+     * @param kind 类型，为 null 时统计全部书籍
+     * @return {count, maxId}
+     */
+    public static int[] getBookCountAndMaxId(String kind) {
+        long t0 = COUNT_AND_MAX_ID.start();
+        try {
+            int[] stats = ConnectionPool.getDefault().read(conn -> {
+                PreparedStatement pstmt;
+                if (kind == null) {
+                    pstmt = conn.prepare("SELECT COUNT(*), COALESCE(MAX(id), 0) FROM books");
+                } else {
+                    pstmt = conn.prepare("SELECT (SELECT COALESCE(MAX(n), 0) FROM kind_counts WHERE kind = ?), " +
+                            "(SELECT COALESCE(MAX(id), 0) FROM books WHERE kind = ?)");
+                    pstmt.setString(1, kind);
+                    pstmt.setString(2, kind);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? new int[]{rs.getInt(1), rs.getInt(2)} : new int[2];
+                }
+            });
+            COUNT_AND_MAX_ID.stop(t0, 1);
+            return stats;
+        } catch (SQLException e) { COUNT_AND_MAX_ID.fail(t0); e.printStackTrace(); return new int[2]; }
+    }
+
+    /**
+     * 按 ID 倒序分页读取（键集分页）
+     * @param beforeId 只返回 ID 小于该值的书籍，第一页传 Integer.MAX_VALUE
+     * @param limit 每页条数
+     */
+    public static Vector<Vector<Object>> getBooksPage(int beforeId, int limit) {
+        return getBooksPage(beforeId, limit, null);
+    }
+
+    /**
+     * 某一类型的书籍按 ID 倒序分页（使用 (kind, id) 索引）
+     * @param kind 类型，为 null 时不限类型
+     */
+    public static Vector<Vector<Object>> getBooksPage(int beforeId, int limit, String kind) {
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books b WHERE " + kindFilter(kind) +
+                "b.id < ? ORDER BY b.id DESC LIMIT ?";
+        return queryBooks(GET_BOOKS_PAGE, sql, kind, beforeId, limit);
+    }
+
+    /**
+     * 按 ID 倒序读取从第 offset 行开始的一页
+     * 仅在没有前一页的 ID 作为锚点时使用（例如直接拖动滚动条跳转）
+     */
+    public static Vector<Vector<Object>> getBooksPageAt(int offset, int limit) {
+        return getBooksPageAt(offset, limit, null);
+    }
+
+    public static Vector<Vector<Object>> getBooksPageAt(int offset, int limit, String kind) {
+        String sql = "SELECT " + BOOK_COLUMNS + " FROM books b " + (kind != null ? "WHERE b.kind = ? " : "") +
+                "ORDER BY b.id DESC LIMIT ? OFFSET ?";
+        return queryBooks(GET_BOOKS_PAGE_AT, sql, kind, limit, offset);
+    }
+
+    private static String kindFilter(String kind) {
+        return kind != null ? "b.kind = ? AND " : "";
+    }
+
+    /**
+     * @param kind 不为 null 时作为第一个参数
+     */
+    private static Vector<Vector<Object>> queryBooks(Metrics.Timer timer, String sql, String kind, int first, int second) {
         Vector<Vector<Object>> data = new Vector<>();
-        String sql = "SELECT id, name, kind FROM books ORDER BY id DESC"; // 倒序排列，新书在前
-        try (Connection conn = DriverManager.getConnection(URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                row.add(rs.getInt("id"));
-                row.add(rs.getString("name"));
-                row.add(rs.getString("kind"));
-                data.add(row);
-            }
-        } catch (SQLException e) { e.printStackTrace(); }
+        long t0 = timer.start();
+        try {
+            ConnectionPool.getDefault().read(conn -> {
+                PreparedStatement pstmt = conn.prepare(sql);
+                int p = 1;
+                if (kind != null) pstmt.setString(p++, kind);
+                pstmt.setInt(p++, first);
+                pstmt.setInt(p, second);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        data.add(bookRow(conn, rs));
+                    }
+                }
+                return null;
+            });
+            timer.stop(t0, data.size());
+        } catch (SQLException e) { timer.fail(t0); e.printStackTrace(); }
         return data;
     }
 
+    /**
+     * 按 ID 读取单本书
+     * @return (id, name, kind)，不存在时返回 null
+     */
+    public static Vector<Object> getBook(int id) {
+        long t0 = GET_BOOK.start();
+        try {
+            Book book = SqliteBookRepository.getDefault().find(id);
+            GET_BOOK.stop(t0, book == null ? 0 : 1);
+            return book == null ? null : bookRow(book);
+        } catch (SQLException e) { GET_BOOK.fail(t0); e.printStackTrace(); return null; }
+    }
+
+    /**
+     * 某本书在按 ID 倒序排列时的行号（即 ID 比它大的书籍数量）
+     * 该书已被删除时返回的是它删除前的行号
+     */
+    public static int getBookRow(int id) {
+        long t0 = GET_BOOK_ROW.start();
+        try {
+            int row = ConnectionPool.getDefault().read(conn -> {
+                PreparedStatement pstmt = conn.prepare("SELECT COUNT(*) FROM books WHERE id > ?");
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            });
+            GET_BOOK_ROW.stop(t0, 1);
+            return row;
+        } catch (SQLException e) { GET_BOOK_ROW.fail(t0); e.printStackTrace(); return -1; }
+    }
+
     /**
      * 根据书名进行模糊搜索
+     * 关键字不少于 3 个字符时走 FTS5 trigram 索引并按相关度排序，
+     * 更短的关键字无法用 trigram 索引，退回 LIKE 扫描；SQL 搜索的结果由 SearchCache 缓存，
+     * 内存索引本身不访问数据库，不经过缓存。
+     * 配置了多个书库时在所有书库中并行搜索（见 CatalogShards），结果按路径排序，每行末尾附加书库名
      * @param keyword 搜索关键字
      * @return 符合条件的数据集
      */
     public static Vector<Vector<Object>> searchBooks(String keyword) {
-        Vector<Vector<Object>> data = new Vector<>();
-        // SQLite 使用 || 进行字符串拼接
-        String sql = "SELECT id, name, kind FROM books WHERE name LIKE '%' || ? || '%'";
-        try (Connection conn = DriverManager.getConnection(URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, keyword);
-            try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    Vector<Object> row = new Vector<>();
-                    row.add(rs.getInt("id"));
-                    row.add(rs.getString("name"));
-                    row.add(rs.getString("kind"));
+        return searchBooks(keyword, null);
+    }
+
+    /**
+     * 在某一类型中搜索
+     * @param kind 类型，为 null 时不限类型
+     */
+    public static Vector<Vector<Object>> searchBooks(String keyword, String kind) {
+        long t0 = SEARCH_BOOKS.start();
+        // 其他书库的写入没有变更通知，多书库搜索不使用内存索引和缓存
+        if (CatalogShards.isSharded()) {
+            Vector<Vector<Object>> data = new Vector<>();
+            try {
+                CatalogShards.search(keyword, kind, hit -> {
+                    Vector<Object> row = bookRow(hit.getBook());
+                    row.add(hit.getShard());
                     data.add(row);
-                }
-            }
-        } catch (SQLException e) { e.printStackTrace(); }
+                });
+                SEARCH_BOOKS.stop(t0, data.size());
+            } catch (SQLException e) { SEARCH_BOOKS.fail(t0); e.printStackTrace(); }
+            return data;
+        }
+        // 开启内存索引时直接在内存中查找
+        if (BookSearchIndex.isReady()) {
+            Vector<Vector<Object>> data = BookSearchIndex.search(keyword);
+            if (kind != null) data.removeIf(row -> !kind.equals(row.get(2)));
+            SEARCH_BOOKS.stop(t0, data.size());
+            return data;
+        }
+
+        // 重复的搜索直接取缓存；代数在查询前取得，查询期间有写入时结果不进缓存
+        long generation = SearchCache.generation();
+        Vector<Vector<Object>> cached = SearchCache.get(keyword, kind);
+        if (cached != null) {
+            SEARCH_BOOKS.stop(t0, cached.size());
+            return cached;
+        }
+
+        Vector<Vector<Object>> data = new Vector<>();
+        try {
+            SqliteBookRepository.getDefault().search(keyword, kind, book -> data.add(bookRow(book)));
+            SearchCache.put(keyword, kind, generation, data);
+            SEARCH_BOOKS.stop(t0, data.size());
+        } catch (SQLException e) { SEARCH_BOOKS.fail(t0); e.printStackTrace(); }
         return data;
     }
 
+    /**
+     * 模糊 / 拼音搜索：拼音首字母、全拼和编辑距离 1~2 的近似匹配（见 FuzzyIndex），
+     * 精确匹配排在前面；第一次调用时在内存中构建索引
+     * @param kind 类型，为 null 时不限类型
+     */
+    public static Vector<Vector<Object>> fuzzySearchBooks(String keyword, String kind) {
+        long t0 = FUZZY_SEARCH_BOOKS.start();
+        Vector<Vector<Object>> data = new Vector<>();
+        try {
+            for (Book book : FuzzyIndex.search(keyword, kind)) data.add(bookRow(book));
+            FUZZY_SEARCH_BOOKS.stop(t0, data.size());
+        } catch (SQLException e) { FUZZY_SEARCH_BOOKS.fail(t0); e.printStackTrace(); }
+        return data;
+    }
+
+    /**
+     * 各类型的书籍数量（按数量从多到少），读取触发器维护的计数表，不扫描书籍表
+     */
+    public static Map<String, Integer> getKindCounts() {
+        long t0 = GET_KIND_COUNTS.start();
+        try {
+            Map<String, Integer> counts = SqliteBookRepository.getDefault().kindCounts();
+            GET_KIND_COUNTS.stop(t0, counts.size());
+            return counts;
+        } catch (SQLException e) { GET_KIND_COUNTS.fail(t0); e.printStackTrace(); return Collections.emptyMap(); }
+    }
+
+    /**
+     * 把一行 BOOK_COLUMNS 结果转换为表格行 (id, BookPath, kind)
+     * 目录路径来自缓存，同一目录下的书共享同一个字符串
+     */
+    static Vector<Object> bookRow(ConnectionPool.PooledConnection conn, ResultSet rs) throws SQLException {
+        return bookRow(SqliteBookRepository.getDefault().book(conn, rs));
+    }
+
+    static Vector<Object> bookRow(Book book) {
+        Vector<Object> row = new Vector<>(3);
+        row.add(book.getId());
+        row.add(book.getPath());
+        row.add(book.getKind());
+        return row;
+    }
+
     /**
      * 更新书籍信息
      * @param id 书籍ID
      * @param newName 新的书名
-     * @return boolean 更新是否成功
+     * @return boolean 更新是否成功（已有同名书籍时不修改，返回 false）
      */
     public static boolean updateBook(int id, String newName) {
-        // 自动根据新名字提取后缀
-        String newKind = "unknown";
-        Matcher m = SUBNAME.matcher(newName);
-        if (m.find()) { newKind = m.group(1); }
+        return updateBook(CatalogShards.MAIN, id, newName);
+    }
 
-        String sql = "UPDATE books SET name = ?, kind = ? WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, newName);
-            pstmt.setString(2, newKind);
-            pstmt.setInt(3, id);
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) { e.printStackTrace(); return false; }
+    /**
+     * 更新某个书库中的书籍（其他书库的修改不发出变更通知）
+     * @param shard 书库名，见 CatalogShards
+     */
+    public static boolean updateBook(String shard, int id, String newName) {
+        long t0 = UPDATE_BOOK.start();
+        try {
+            boolean updated = CatalogShards.repository(shard).rename(id, newName);
+            UPDATE_BOOK.stop(t0, updated ? 1 : 0);
+            return updated;
+        } catch (SQLException e) { UPDATE_BOOK.fail(t0); e.printStackTrace(); return false; }
     }
 
     /**
@@ -96,25 +334,34 @@ public class QueryDB {
      * @return boolean 删除是否成功
      */
     public static boolean deleteBook(int id) {
-        String sql = "DELETE FROM books WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) { e.printStackTrace(); return false; }
+        return deleteBook(CatalogShards.MAIN, id);
+    }
+
+    /**
+     * 删除某个书库中的书籍（其他书库的删除不发出变更通知）
+     * @param shard 书库名，见 CatalogShards
+     */
+    public static boolean deleteBook(String shard, int id) {
+        long t0 = DELETE_BOOK.start();
+        try {
+            boolean deleted = CatalogShards.repository(shard).delete(id);
+            DELETE_BOOK.stop(t0, deleted ? 1 : 0);
+            return deleted;
+        } catch (SQLException e) { DELETE_BOOK.fail(t0); e.printStackTrace(); return false; }
     }
 
     /**
-     * 清空整个书籍表
+     * 清空整个书籍表（连同目录表和导入记录，之后可以重新导入同一文件）
+     * 清空前自动创建快照，可以从快照恢复
+     * @return 是否已清空（创建快照失败时不清空）
      */
-    public static void clearAllBooks() {
-        String sql = "DELETE FROM books";
-        try (Connection conn = DriverManager.getConnection(URL);
-             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(sql);
-            // 可选：重置自增ID
-            stmt.executeUpdate("DELETE FROM sqlite_sequence WHERE name='books'");
-        } catch (SQLException e) { e.printStackTrace(); }
+    public static boolean clearAllBooks() {
+        long t0 = CLEAR_ALL_BOOKS.start();
+        try {
+            SqliteBookRepository.getDefault().clear();
+            CLEAR_ALL_BOOKS.stop(t0, 0);
+            return true;
+        } catch (SQLException e) { CLEAR_ALL_BOOKS.fail(t0); e.printStackTrace(); return false; }
     }
 
     // ================= 日志管理相关方法 (新增功能) =================
@@ -126,17 +373,39 @@ public class QueryDB {
      * @param details 详情
      */
     public static void addLog(String time, String action, String details) {
-        // 确保表存在
-        SetUpDB.initTables();
+        String sql = "INSERT INTO logs(log_time, action, details) VALUES(?, ?, ?)";
+        long t0 = ADD_LOG.start();
+        try {
+            ConnectionPool.getDefault().write(conn -> {
+                PreparedStatement pstmt = conn.prepare(sql);
+                pstmt.setString(1, time);
+                pstmt.setString(2, action);
+                pstmt.setString(3, details);
+                return pstmt.executeUpdate();
+            });
+            ADD_LOG.stop(t0, 1);
+        } catch (SQLException e) { ADD_LOG.fail(t0); e.printStackTrace(); }
+    }
 
+    /**
+     * 在一个事务中批量写入日志（由 AuditLog 的写线程调用）
+     */
+    static void addLogs(List<AuditLog.Entry> entries) {
         String sql = "INSERT INTO logs(log_time, action, details) VALUES(?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, time);
-            pstmt.setString(2, action);
-            pstmt.setString(3, details);
-            pstmt.executeUpdate();
-        } catch (SQLException e) { e.printStackTrace(); }
+        long t0 = ADD_LOGS.start();
+        try {
+            ConnectionPool.getDefault().transaction(conn -> {
+                PreparedStatement pstmt = conn.prepare(sql);
+                for (AuditLog.Entry entry : entries) {
+                    pstmt.setString(1, entry.time);
+                    pstmt.setString(2, entry.action);
+                    pstmt.setString(3, entry.details);
+                    pstmt.addBatch();
+                }
+                return pstmt.executeBatch();
+            });
+            ADD_LOGS.stop(t0, entries.size());
+        } catch (SQLException e) { ADD_LOGS.fail(t0); e.printStackTrace(); }
     }
 
     /**
@@ -144,35 +413,94 @@ public class QueryDB {
      * @return 用于表格显示的日志数据
      */
     public static Vector<Vector<Object>> getAllLogs() {
-        SetUpDB.initTables();
         Vector<Vector<Object>> data = new Vector<>();
         String sql = "SELECT id, log_time, action, details FROM logs ORDER BY id DESC";
-        try (Connection conn = DriverManager.getConnection(URL);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                row.add(rs.getInt("id"));
-                row.add(rs.getString("log_time"));
-                row.add(rs.getString("action"));
-                row.add(rs.getString("details"));
-                data.add(row);
-            }
-        } catch (SQLException e) { e.printStackTrace(); }
+        long t0 = GET_ALL_LOGS.start();
+        try {
+            ConnectionPool.getDefault().read(conn -> {
+                try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+                    while (rs.next()) {
+                        Vector<Object> row = new Vector<>();
+                        row.add(rs.getInt("id"));
+                        row.add(rs.getString("log_time"));
+                        row.add(rs.getString("action"));
+                        row.add(rs.getString("details"));
+                        data.add(row);
+                    }
+                }
+                return null;
+            });
+            GET_ALL_LOGS.stop(t0, data.size());
+        } catch (SQLException e) { GET_ALL_LOGS.fail(t0); e.printStackTrace(); }
         return data;
     }
 
+    /**
+     * 按 ID 倒序分页读取日志（键集分页）
+     * @param beforeId 只返回 ID 小于它的日志，第一页传 Integer.MAX_VALUE
+     * @param limit 每页条数
+     */
+    public static Vector<Vector<Object>> getLogsPage(int beforeId, int limit) {
+        Vector<Vector<Object>> data = new Vector<>();
+        String sql = "SELECT id, log_time, action, details FROM logs WHERE id < ? ORDER BY id DESC LIMIT ?";
+        long t0 = GET_LOGS_PAGE.start();
+        try {
+            ConnectionPool.getDefault().read(conn -> {
+                PreparedStatement pstmt = conn.prepare(sql);
+                pstmt.setInt(1, beforeId);
+                pstmt.setInt(2, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Vector<Object> row = new Vector<>();
+                        row.add(rs.getInt("id"));
+                        row.add(rs.getString("log_time"));
+                        row.add(rs.getString("action"));
+                        row.add(rs.getString("details"));
+                        data.add(row);
+                    }
+                }
+                return null;
+            });
+            GET_LOGS_PAGE.stop(t0, data.size());
+        } catch (SQLException e) { GET_LOGS_PAGE.fail(t0); e.printStackTrace(); }
+        return data;
+    }
+
+    /**
+     * 日志表中的记录数（不含已归档的日志）
+     */
+    public static int countLogs() {
+        long t0 = COUNT_LOGS.start();
+        try {
+            int count = ConnectionPool.getDefault().read(conn -> {
+                try (ResultSet rs = conn.prepare("SELECT COUNT(*) FROM logs").executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            });
+            COUNT_LOGS.stop(t0, 1);
+            return count;
+        } catch (SQLException e) {
+            COUNT_LOGS.fail(t0);
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
     /**
      * 删除单条日志
      * @param id 日志ID
      */
     public static void deleteLog(int id) {
         String sql = "DELETE FROM logs WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
-        } catch (SQLException e) { e.printStackTrace(); }
+        long t0 = DELETE_LOG.start();
+        try {
+            int deleted = ConnectionPool.getDefault().write(conn -> {
+                PreparedStatement pstmt = conn.prepare(sql);
+                pstmt.setInt(1, id);
+                return pstmt.executeUpdate();
+            });
+            DELETE_LOG.stop(t0, deleted);
+        } catch (SQLException e) { DELETE_LOG.fail(t0); e.printStackTrace(); }
     }
 
     /**
@@ -180,9 +508,10 @@ public class QueryDB {
      */
     public static void clearLogs() {
         String sql = "DELETE FROM logs";
-        try (Connection conn = DriverManager.getConnection(URL);
-             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(sql);
-        } catch (SQLException e) { e.printStackTrace(); }
+        long t0 = CLEAR_LOGS.start();
+        try {
+            int deleted = ConnectionPool.getDefault().write(conn -> conn.prepare(sql).executeUpdate());
+            CLEAR_LOGS.stop(t0, deleted);
+        } catch (SQLException e) { CLEAR_LOGS.fail(t0); e.printStackTrace(); }
     }
 }
\ No newline at end of file
@@ -0,0 +1,253 @@
+import java.sql.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 数据库结构版本管理
+ * 当前版本记录在 PRAGMA user_version 中，启动时执行一次，
+ * 按顺序应用尚未执行的升级步骤，之后任何读写操作都不再执行 DDL
+ */
+public class SchemaMigrator {
+
+    /**
+     * 单个升级步骤，在写连接的事务中执行
+     */
+    @FunctionalInterface
+    interface Migration {
+        void apply(Statement stmt) throws SQLException;
+    }
+
+    // 下标 + 1 即为该步骤完成后的版本号，只能在末尾追加新步骤
+    private static final List<Migration> MIGRATIONS = List.of(
+            SchemaMigrator::createBaseTables,
+            SchemaMigrator::createBookSearchIndex,
+            SchemaMigrator::normalizeDirectories,
+            SchemaMigrator::uniqueBookPaths,
+            SchemaMigrator::kindCounts,
+            SchemaMigrator::pruneDirectories
+    );
+    // 这些版本重建或大量删除了数据，升级后执行 VACUUM 回收空间
+    private static final Set<Integer> VACUUM_AFTER = Set.of(3, 4);
+
+    /**
+     * 最新的结构版本号
+     */
+    public static int latestVersion() {
+        return MIGRATIONS.size();
+    }
+
+    /**
+     * 将数据库升级到最新版本
+     * @param pool 目标数据库的连接池
+     * @return 升级后的版本号
+     */
+    public static int migrate(ConnectionPool pool) throws SQLException {
+        return pool.write(conn -> {
+            int version = readVersion(conn);
+            for (int i = version; i < MIGRATIONS.size(); i++) {
+                Migration migration = MIGRATIONS.get(i);
+                int target = i + 1;
+                pool.transaction(tx -> {
+                    try (Statement stmt = tx.createStatement()) {
+                        migration.apply(stmt);
+                        stmt.executeUpdate("PRAGMA user_version = " + target);
+                    }
+                    return null;
+                });
+                System.out.println("数据库结构已升级到版本 " + target);
+            }
+            if (VACUUM_AFTER.stream().anyMatch(v -> v > version && v <= MIGRATIONS.size())) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.executeUpdate("VACUUM");
+                }
+            }
+            return Math.max(version, MIGRATIONS.size());
+        });
+    }
+
+    private static int readVersion(ConnectionPool.PooledConnection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // ================= 升级步骤 =================
+
+    /**
+     * 版本 1：books 表和 logs 表
+     * 旧数据库（user_version = 0）可能已经有这两张表，因此使用 IF NOT EXISTS
+     */
+    private static void createBaseTables(Statement stmt) throws SQLException {
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS books (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "name VARCHAR(256), " +
+                "kind VARCHAR(16))");
+
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS logs (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "log_time TEXT, " +
+                "action TEXT, " +
+                "details TEXT)");
+    }
+
+    /**
+     * 版本 2：books.name 的 FTS5 全文索引
+     * 使用 trigram 分词，中文书名无需分词即可按任意子串匹配；
+     * 外部内容表只保存索引，由触发器与 books 表保持同步
+     */
+    private static void createBookSearchIndex(Statement stmt) throws SQLException {
+        stmt.executeUpdate("CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5(" +
+                "name, content='books', content_rowid='id', tokenize='trigram')");
+
+        stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS books_fts_ai AFTER INSERT ON books BEGIN " +
+                "INSERT INTO books_fts(rowid, name) VALUES (new.id, new.name); END");
+        stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS books_fts_ad AFTER DELETE ON books BEGIN " +
+                "INSERT INTO books_fts(books_fts, rowid, name) VALUES ('delete', old.id, old.name); END");
+        stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS books_fts_au AFTER UPDATE OF name ON books BEGIN " +
+                "INSERT INTO books_fts(books_fts, rowid, name) VALUES ('delete', old.id, old.name); " +
+                "INSERT INTO books_fts(rowid, name) VALUES (new.id, new.name); END");
+
+        // 为已有数据建立索引
+        stmt.executeUpdate("INSERT INTO books_fts(books_fts) VALUES ('rebuild')");
+    }
+
+    /**
+     * 版本 3：目录规范化
+     * 目录前缀存入 directories 表，books 改为 (dir_id, filename)，不再为每本书重复保存目录；
+     * 完整路径由 book_names 视图拼接，FTS 索引改为以该视图为内容表
+     */
+    private static void normalizeDirectories(Statement stmt) throws SQLException {
+        Connection conn = stmt.getConnection();
+        stmt.executeUpdate("CREATE TABLE directories (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "path TEXT NOT NULL UNIQUE)");
+        stmt.executeUpdate("CREATE TABLE books_new (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "dir_id INTEGER NOT NULL DEFAULT 0, " +
+                "filename TEXT NOT NULL, " +
+                "kind VARCHAR(16))");
+
+        // 拆分旧数据（保留原 ID）
+        Map<String, Integer> dirIds = new HashMap<>();
+        try (Statement query = conn.createStatement();
+             ResultSet rs = query.executeQuery("SELECT id, name, kind FROM books");
+             PreparedStatement insertDir = conn.prepareStatement("INSERT INTO directories(path) VALUES(?)");
+             PreparedStatement lastId = conn.prepareStatement("SELECT last_insert_rowid()");
+             PreparedStatement insertBook = conn.prepareStatement(
+                     "INSERT INTO books_new(id, dir_id, filename, kind) VALUES(?, ?, ?, ?)")) {
+            while (rs.next()) {
+                String name = rs.getString("name");
+                String[] parts = Directories.split(name == null ? "" : name);
+                Integer dirId = 0;
+                if (!parts[0].isEmpty()) {
+                    dirId = dirIds.get(parts[0]);
+                    if (dirId == null) {
+                        insertDir.setString(1, parts[0]);
+                        insertDir.executeUpdate();
+                        try (ResultSet keys = lastId.executeQuery()) {
+                            keys.next();
+                            dirId = keys.getInt(1);
+                        }
+                        dirIds.put(parts[0], dirId);
+                    }
+                }
+                insertBook.setInt(1, rs.getInt("id"));
+                insertBook.setInt(2, dirId);
+                insertBook.setString(3, parts[1]);
+                insertBook.setString(4, rs.getString("kind"));
+                insertBook.addBatch();
+            }
+            insertBook.executeBatch();
+        }
+
+        stmt.executeUpdate("DROP TRIGGER IF EXISTS books_fts_ai");
+        stmt.executeUpdate("DROP TRIGGER IF EXISTS books_fts_ad");
+        stmt.executeUpdate("DROP TRIGGER IF EXISTS books_fts_au");
+        stmt.executeUpdate("DROP TABLE IF EXISTS books_fts");
+        stmt.executeUpdate("DROP TABLE books");
+        stmt.executeUpdate("ALTER TABLE books_new RENAME TO books");
+
+        stmt.executeUpdate("CREATE VIEW book_names AS " +
+                "SELECT b.id AS id, COALESCE(d.path, '') || b.filename AS name " +
+                "FROM books b LEFT JOIN directories d ON d.id = b.dir_id");
+        stmt.executeUpdate("CREATE VIRTUAL TABLE books_fts USING fts5(" +
+                "name, content='book_names', content_rowid='id', tokenize='trigram')");
+
+        String fullName = "COALESCE((SELECT path FROM directories WHERE id = %1$s.dir_id), '') || %1$s.filename";
+        stmt.executeUpdate("CREATE TRIGGER books_fts_ai AFTER INSERT ON books BEGIN " +
+                "INSERT INTO books_fts(rowid, name) VALUES (new.id, " + String.format(fullName, "new") + "); END");
+        stmt.executeUpdate("CREATE TRIGGER books_fts_ad AFTER DELETE ON books BEGIN " +
+                "INSERT INTO books_fts(books_fts, rowid, name) VALUES ('delete', old.id, " + String.format(fullName, "old") + "); END");
+        stmt.executeUpdate("CREATE TRIGGER books_fts_au AFTER UPDATE OF dir_id, filename ON books BEGIN " +
+                "INSERT INTO books_fts(books_fts, rowid, name) VALUES ('delete', old.id, " + String.format(fullName, "old") + "); " +
+                "INSERT INTO books_fts(rowid, name) VALUES (new.id, " + String.format(fullName, "new") + "); END");
+
+        stmt.executeUpdate("INSERT INTO books_fts(books_fts) VALUES ('rebuild')");
+    }
+
+    /**
+     * 版本 4：书籍路径唯一，记录导入来源
+     * 删除重复导入产生的同路径书籍（保留最早的一条），在 (dir_id, filename) 上建立唯一索引；
+     * import_files 记录每个索引文件上次导入时的大小、修改时间和 SHA-256，
+     * book_sources 记录书籍来自哪些索引文件，用于重新导入时找出被移除的行
+     */
+    private static void uniqueBookPaths(Statement stmt) throws SQLException {
+        int removed = stmt.executeUpdate("DELETE FROM books WHERE id NOT IN " +
+                "(SELECT MIN(id) FROM books GROUP BY dir_id, filename)");
+        if (removed > 0) System.out.println("删除重复书籍: " + removed + " 本");
+        stmt.executeUpdate("CREATE UNIQUE INDEX books_path ON books(dir_id, filename)");
+
+        stmt.executeUpdate("CREATE TABLE import_files (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "path TEXT NOT NULL UNIQUE, " +
+                "size INTEGER, " +
+                "mtime INTEGER, " +
+                "hash TEXT, " +
+                "imported_at TEXT)");
+        stmt.executeUpdate("CREATE TABLE book_sources (" +
+                "file_id INTEGER NOT NULL, " +
+                "book_id INTEGER NOT NULL, " +
+                "PRIMARY KEY (file_id, book_id)) WITHOUT ROWID");
+        stmt.executeUpdate("CREATE INDEX book_sources_book ON book_sources(book_id)");
+        stmt.executeUpdate("CREATE TRIGGER books_sources_ad AFTER DELETE ON books BEGIN " +
+                "DELETE FROM book_sources WHERE book_id = old.id; END");
+    }
+
+    /**
+     * 版本 5：按类型筛选
+     * (kind, id) 索引支持按类型过滤并按 ID 倒序分页；kind_counts 保存各类型的书籍数量，
+     * 由触发器随 books 的增删改同步维护，读取时不必对 books 做 GROUP BY
+     */
+    private static void kindCounts(Statement stmt) throws SQLException {
+        // 所有写入路径都会给出类型，早期数据中的空值统一为 unknown
+        stmt.executeUpdate("UPDATE books SET kind = 'unknown' WHERE kind IS NULL OR kind = ''");
+        stmt.executeUpdate("CREATE INDEX books_kind ON books(kind, id)");
+
+        stmt.executeUpdate("CREATE TABLE kind_counts (" +
+                "kind TEXT PRIMARY KEY, " +
+                "n INTEGER NOT NULL) WITHOUT ROWID");
+        stmt.executeUpdate("INSERT INTO kind_counts(kind, n) SELECT kind, COUNT(*) FROM books GROUP BY kind");
+        stmt.executeUpdate("CREATE TRIGGER kind_counts_ai AFTER INSERT ON books BEGIN " +
+                "INSERT INTO kind_counts(kind, n) VALUES (IFNULL(new.kind, 'unknown'), 1) " +
+                "ON CONFLICT(kind) DO UPDATE SET n = n + 1; END");
+        stmt.executeUpdate("CREATE TRIGGER kind_counts_ad AFTER DELETE ON books BEGIN " +
+                "UPDATE kind_counts SET n = n - 1 WHERE kind = IFNULL(old.kind, 'unknown'); END");
+        stmt.executeUpdate("CREATE TRIGGER kind_counts_au AFTER UPDATE OF kind ON books " +
+                "WHEN old.kind IS NOT new.kind BEGIN " +
+                "UPDATE kind_counts SET n = n - 1 WHERE kind = IFNULL(old.kind, 'unknown'); " +
+                "INSERT INTO kind_counts(kind, n) VALUES (IFNULL(new.kind, 'unknown'), 1) " +
+                "ON CONFLICT(kind) DO UPDATE SET n = n + 1; END");
+    }
+
+    /**
+     * 版本 6：删除没有书籍的目录
+     * 之前删除、移动书籍后目录行一直保留；此后由 Directories.prune 在同一事务中删除
+     */
+    private static void pruneDirectories(Statement stmt) throws SQLException {
+        stmt.executeUpdate("DELETE FROM directories WHERE NOT EXISTS " +
+                "(SELECT 1 FROM books WHERE books.dir_id = directories.id)");
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * QueryDB.searchBooks 的结果缓存
+ * 按规范化后的关键字缓存表格数据，按最近最少使用淘汰，条目数和总行数都有上限。
+ * 任何书籍写操作（BookEvents）都会使代数加一并清空缓存；查询前记下代数，
+ * 查询期间发生过写入时结果不会放入缓存，因此不会返回写入之前的旧数据。
+ * 配置项 search.cacheEntries / search.cacheRows，任一为 0 时关闭缓存
+ */
+public class SearchCache {
+    private static final int MAX_ENTRIES = AppConfig.getInt("search.cacheEntries", 128);
+    private static final long MAX_ROWS = AppConfig.getInt("search.cacheRows", 200_000);
+    private static final boolean ENABLED = MAX_ENTRIES > 0 && MAX_ROWS > 0;
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+    // 按访问顺序排列，最久未使用的在最前
+    private static final LinkedHashMap<String, Vector<Vector<Object>>> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long rows;
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    static {
+        BookEvents.addListener(change -> invalidate());
+        Metrics.value("kindlebooks_search_cache_hits_total", "counter", "搜索缓存命中次数", HITS::sum);
+        Metrics.value("kindlebooks_search_cache_misses_total", "counter", "搜索缓存未命中次数", MISSES::sum);
+        Metrics.value("kindlebooks_search_cache_evictions_total", "counter", "搜索缓存淘汰的条目数", EVICTIONS::sum);
+        Metrics.value("kindlebooks_search_cache_entries", "gauge", "搜索缓存当前条目数", SearchCache::size);
+        Metrics.value("kindlebooks_search_cache_rows", "gauge", "搜索缓存当前保存的行数", SearchCache::rows);
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 当前代数，查询之前取得，放入缓存时传回
+     */
+    public static long generation() {
+        return GENERATION.get();
+    }
+
+    /**
+     * 查找缓存
+     * @param kind 类型筛选，可为 null
+     * @return 缓存数据的副本（调用者可以修改），未命中时返回 null
+     */
+    public static Vector<Vector<Object>> get(String keyword, String kind) {
+        if (!ENABLED) return null;
+        Vector<Vector<Object>> data;
+        synchronized (ENTRIES) {
+            data = ENTRIES.get(key(keyword, kind));
+            // 表格模型会增删行，交给调用者的是副本；各行本身不会被修改，可以共享
+            if (data != null) data = new Vector<>(data);
+        }
+        if (data == null) MISSES.increment();
+        else HITS.increment();
+        return data;
+    }
+
+    /**
+     * 放入缓存（复制一份保存）
+     * @param generation 查询开始前 generation() 的返回值，此后发生过写入时不缓存
+     */
+    public static void put(String keyword, String kind, long generation, Vector<Vector<Object>> data) {
+        if (!ENABLED || data.size() > MAX_ROWS) return;
+        String key = key(keyword, kind);
+        Vector<Vector<Object>> copy = new Vector<>(data);
+        synchronized (ENTRIES) {
+            if (generation != GENERATION.get()) return;
+            Vector<Vector<Object>> old = ENTRIES.put(key, copy);
+            if (old != null) rows -= old.size();
+            rows += copy.size();
+            Iterator<Vector<Vector<Object>>> eldest = ENTRIES.values().iterator();
+            while (ENTRIES.size() > MAX_ENTRIES || rows > MAX_ROWS) {
+                rows -= eldest.next().size();
+                eldest.remove();
+                EVICTIONS.increment();
+            }
+        }
+    }
+
+    /**
+     * 书籍数据发生变化，丢弃所有缓存
+     */
+    public static void invalidate() {
+        synchronized (ENTRIES) {
+            GENERATION.incrementAndGet();
+            ENTRIES.clear();
+            rows = 0;
+        }
+    }
+
+    public static long hits() {
+        return HITS.sum();
+    }
+
+    public static long misses() {
+        return MISSES.sum();
+    }
+
+    public static long size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    public static long rows() {
+        synchronized (ENTRIES) {
+            return rows;
+        }
+    }
+
+    /**
+     * 类型筛选是键的一部分（类型区分大小写，不做规范化）
+     */
+    private static String key(String keyword, String kind) {
+        String normalized = normalize(keyword);
+        return kind == null ? normalized : normalized + '\0' + kind;
+    }
+
+    /**
+     * SQL 搜索对 ASCII 字母不区分大小写（LIKE 和 FTS5 trigram 都是），
+     * 只有纯 ASCII 的关键字可以统一转成小写；其他字符保持原样
+     */
+    static String normalize(String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (keyword.charAt(i) >= 0x80) return keyword;
+        }
+        return keyword.toLowerCase(Locale.ROOT);
+    }
+}
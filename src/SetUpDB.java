@@ -1,57 +1,45 @@
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
-import java.util.Vector;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 数据库初始化与数据导入工具类
  */
 public class SetUpDB {
-    // 匹配以 ./ 或 / 开头的行（通常是 tree 命令生成的路径）
-    private static final Pattern TITLE = Pattern.compile("^[./].*");
-    // 匹配常见电子书后缀
-    private static final Pattern SUBNAME = Pattern.compile("\\.(pdf|mobi|epub|azw3|html|txt)$");
-    // 数据库连接地址
-    private static final String DB_URL = "jdbc:sqlite:kindlebooks.db";
+    private static final Metrics.Timer INIT_TABLES = Metrics.timer("SetUpDB.initTables");
+    private static final Metrics.Timer IMPORT_FILES = Metrics.timer("SetUpDB.importBooksFromFiles");
+    private static final Metrics.Timer ADD_BOOK = Metrics.timer("SetUpDB.addBook");
 
-    static {
-        // 静态代码块：加载驱动（只需执行一次）
+    /**
+     * 初始化数据库表结构（升级到最新版本）
+     * 结构升级由 SchemaMigrator 按版本执行，已是最新版本时只读取一次 user_version
+     */
+    public static void initTables() {
+        // 包括第一次调用时创建连接池的时间
+        long t0 = INIT_TABLES.start();
         try {
-            Class.forName("org.sqlite.JDBC");
-        } catch (ClassNotFoundException e) {
+            SchemaMigrator.migrate(ConnectionPool.getDefault());
+            INIT_TABLES.stop(t0, 0);
+        } catch (SQLException e) {
+            INIT_TABLES.fail(t0);
             e.printStackTrace();
         }
     }
 
     /**
-     * 初始化数据库表结构（如果不存在则创建）
-     * 包含 books 表和 logs 表
+     * 导入进度回调
      */
-    public static void initTables() {
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             Statement stmt = conn.createStatement()) {
-
-            // 1. 创建书籍表
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS books (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "name VARCHAR(256), " +
-                    "kind VARCHAR(16))");
-
-            // 2. 创建日志表 (修复功能缺失)
-            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS logs (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "log_time TEXT, " +
-                    "action TEXT, " +
-                    "details TEXT)");
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+    @FunctionalInterface
+    public interface ImportProgress {
+        /**
+         * 每提交一批数据后调用
+         * @param linesRead 已读取的行数
+         * @param booksImported 已写入数据库的书籍数量
+         */
+        void onProgress(long linesRead, long booksImported);
     }
 
     /**
@@ -59,54 +47,57 @@ public class SetUpDB {
      * @param filename 包含文件索引的文本文件路径
      * @throws IOException 文件读取异常
      */
-    public static void importBooksFromFile(String filename) throws IOException {
-        // 确保表存在
-        initTables();
-
-        String title = "";
-        Vector<String> fullNames = new Vector<>();
-        Vector<String> kinds = new Vector<>();
+    public static long importBooksFromFile(String filename) throws IOException {
+        return importBooksFromFile(filename, null);
+    }
 
-        // 1. 读取文件并解析
-        try (BufferedReader br = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
-            String line = br.readLine();
-            while (line != null) {
-                // 如果是目录行，更新当前目录上下文
-                if (TITLE.matcher(line).find()) {
-                    title = line;
-                }
-                // 如果是文件行，提取后缀并组合完整路径
-                Matcher m = SUBNAME.matcher(line);
-                if (m.find()) {
-                    kinds.add(m.group(1)); // 后缀名
-                    fullNames.add(title + line); // 完整路径
-                }
-                line = br.readLine();
-            }
-        }
+    /**
+     * 以流式方式从文本文件导入书籍数据
+     * 逐行解析，每满 import.batchSize 条（默认 5000）即在独立事务中写入一批，
+     * 内存占用与文件大小无关；文件读完后再删除已从文件中移除的书籍。
+     * 重复导入同一文件不会产生重复书籍，文件未变化时直接跳过
+     * @param filename 包含文件索引的文本文件路径
+     * @param progress 进度回调，可为 null
+     * @return 新增的书籍数量
+     * @throws IOException 文件读取或数据库写入失败
+     */
+    public static long importBooksFromFile(String filename, ImportProgress progress) throws IOException {
+        return importBooksFromFiles(Collections.singletonList(Paths.get(filename)), progress);
+    }
 
-        System.out.println("解析到书籍数量: " + fullNames.size());
+    /**
+     * 同时导入多个索引文件（目录会展开为其中所有的 .txt 文件）
+     * 各文件由多个线程并行解析，经有界队列交给单个写线程入库
+     * @param paths 索引文件或包含索引文件的目录
+     * @param progress 进度回调，可为 null
+     * @return 新增的书籍数量
+     * @throws IOException 文件读取或数据库写入失败
+     */
+    public static long importBooksFromFiles(List<Path> paths, ImportProgress progress) throws IOException {
+        return importBooksFromFiles(CatalogShards.MAIN, paths, progress);
+    }
 
-        // 2. 批量插入数据库
-        try (Connection conn = DriverManager.getConnection(DB_URL)) {
-            conn.setAutoCommit(false); // 开启事务
+    /**
+     * 导入到某个书库（见 CatalogShards），其他书库的新书不发出变更通知
+     * @param shard 书库名
+     */
+    public static long importBooksFromFiles(String shard, List<Path> paths, ImportProgress progress) throws IOException {
+        long t0 = IMPORT_FILES.start();
+        try {
+            long imported = repository(shard).importFiles(paths, progress);
+            IMPORT_FILES.stop(t0, imported);
+            return imported;
+        } catch (IOException | RuntimeException e) {
+            IMPORT_FILES.fail(t0);
+            throw e;
+        }
+    }
 
-            String sql = "INSERT INTO books(name, kind) VALUES(?, ?)";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                for (int i = 0; i < fullNames.size(); i++) {
-                    stmt.setString(1, fullNames.get(i));
-                    stmt.setString(2, kinds.get(i));
-                    stmt.addBatch();
-                }
-                stmt.executeBatch();
-                conn.commit(); // 提交事务
-                System.out.println("数据批量添加成功");
-            } catch (SQLException e) {
-                conn.rollback(); // 发生错误回滚
-                e.printStackTrace();
-            }
+    private static SqliteBookRepository repository(String shard) throws IOException {
+        try {
+            return CatalogShards.repository(shard);
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new IOException("打开书库 " + shard + " 失败: " + e.getMessage(), e);
         }
     }
 
@@ -121,10 +112,9 @@ public class SetUpDB {
         }
 
         // 自动提取后缀名
-        String kind = "unknown";
-        Matcher m = SUBNAME.matcher(fullBookName);
-        if (m.find()) {
-            kind = m.group(1);
+        String kind = TreeLineParser.kindOf(fullBookName);
+        if (kind == null) {
+            kind = "unknown";
         }
 
         return addBookWithExplicitType(fullBookName, kind);
@@ -134,29 +124,31 @@ public class SetUpDB {
      * 添加带有明确类型的书籍记录
      * @param name 完整的书名或路径
      * @param kind 书籍的类型（后缀名）
-     * @return 是否添加成功
+     * @return 是否添加成功（同路径的书籍已存在时返回 false）
      */
     public static boolean addBookWithExplicitType(String name, String kind) {
-        initTables(); // 确保表存在
-
         if (name == null || name.trim().isEmpty() || kind == null || kind.trim().isEmpty()) {
             return false;
         }
 
-        String sql = "INSERT INTO books(name, kind) VALUES(?, ?)";
-
-        try (Connection conn = DriverManager.getConnection(DB_URL);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, name.trim());
-            pstmt.setString(2, kind.trim());
-
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-
+        long t0 = ADD_BOOK.start();
+        try {
+            boolean added = SqliteBookRepository.getDefault().add(name, kind) != null;
+            ADD_BOOK.stop(t0, added ? 1 : 0);
+            return added;
         } catch (SQLException e) {
+            ADD_BOOK.fail(t0);
             e.printStackTrace();
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 写连接上最近一次插入的行 ID
+     */
+    static int lastInsertId(ConnectionPool.PooledConnection conn) throws SQLException {
+        try (ResultSet rs = conn.prepare("SELECT last_insert_rowid()").executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 数据库在线快照（备份）与恢复
+ * 用 SQLite 备份 API 在独立连接上把数据库逐步复制到快照目录，每步 snapshot.pagesPerStep 页，
+ * 步与步之间暂停 snapshot.stepDelayMillis 毫秒，界面和导入不会被阻塞。
+ * WAL 模式下复制期间在源连接上保持一个读事务：快照是开始时刻的一致副本，
+ * 其他连接的写入既不会被阻塞，也不会让备份从头开始。
+ * 快照先写为 .part 临时文件，完成后改名；按来源（手动、定时、清空前、导入前、恢复前）分别保留最近
+ * snapshot.keep 个，超过 snapshot.maxAgeDays 天的删除。清空书库和批量导入之前自动创建快照
+ */
+public class Snapshots {
+    private static final Path DIR = Paths.get(AppConfig.get("snapshot.dir", "snapshots"));
+    private static final int INTERVAL_MINUTES = AppConfig.getInt("snapshot.intervalMinutes", 0);
+    private static final int KEEP = AppConfig.getInt("snapshot.keep", 10);
+    private static final int MAX_AGE_DAYS = AppConfig.getInt("snapshot.maxAgeDays", 0);
+    private static final int PAGES_PER_STEP = Math.max(1, AppConfig.getInt("snapshot.pagesPerStep", 256));
+    private static final int STEP_DELAY_MILLIS = Math.max(0, AppConfig.getInt("snapshot.stepDelayMillis", 5));
+    private static final boolean BEFORE_BULK_CHANGES = AppConfig.getBoolean("snapshot.beforeBulkChanges", true);
+    // 遇到锁时每次等待的毫秒数和最多等待的次数
+    private static final int BUSY_SLEEP_MILLIS = 100;
+    private static final int BUSY_RETRIES = 50;
+
+    public static final String MANUAL = "manual";
+    public static final String SCHEDULED = "scheduled";
+    public static final String BEFORE_CLEAR = "before-clear";
+    public static final String BEFORE_IMPORT = "before-import";
+    public static final String BEFORE_RESTORE = "before-restore";
+
+    private static final String PREFIX = "kindlebooks-";
+    private static final String SUFFIX = ".db";
+    private static final DateTimeFormatter NAME_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // kindlebooks-20260101-120000-manual.db，同一秒内的第二个快照带序号：...-manual-2.db
+    private static final Pattern NAME = Pattern.compile(
+            Pattern.quote(PREFIX) + "(\\d{8}-\\d{6})-([a-z-]+?)(?:-(\\d+))?" + Pattern.quote(SUFFIX));
+
+    private static final Metrics.Timer TAKE = Metrics.timer("Snapshots.take");
+    private static final Metrics.Timer RESTORE = Metrics.timer("Snapshots.restore");
+
+    // 上次快照之后书籍是否有变化，没有变化时跳过定时快照
+    private static final AtomicBoolean CHANGED = new AtomicBoolean(true);
+    private static ScheduledExecutorService scheduler;
+
+    static {
+        BookEvents.addListener(change -> CHANGED.set(true));
+    }
+
+    /**
+     * 快照目录中的一个快照文件
+     */
+    public static final class Snapshot {
+        private final Path path;
+        private final LocalDateTime time;
+        private final String reason;
+        private final long bytes;
+
+        Snapshot(Path path, LocalDateTime time, String reason, long bytes) {
+            this.path = path;
+            this.time = time;
+            this.reason = reason;
+            this.bytes = bytes;
+        }
+
+        public Path getPath() { return path; }
+
+        public LocalDateTime getTime() { return time; }
+
+        /**
+         * 来源：manual / scheduled / before-clear / before-import / before-restore
+         */
+        public String getReason() { return reason; }
+
+        public long getBytes() { return bytes; }
+
+        @Override
+        public String toString() {
+            return path.getFileName() + "\t" + time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
+                    + "\t" + reason + "\t" + bytes;
+        }
+    }
+
+    /**
+     * 启动定时快照（每隔 snapshot.intervalMinutes 分钟，书籍没有变化时跳过），未配置间隔时不启动
+     */
+    public static synchronized void start() {
+        if (scheduler != null || INTERVAL_MINUTES <= 0) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-snapshot");
+            t.setDaemon(true);
+            // 让出 CPU 和磁盘给界面和导入
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (!CHANGED.get()) return;
+            try {
+                Snapshot snapshot = take(SCHEDULED);
+                System.out.println("已创建定时快照: " + snapshot.getPath());
+            } catch (SQLException | IOException e) {
+                e.printStackTrace();
+            }
+        }, INTERVAL_MINUTES, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 清空书库、批量导入等大量修改之前调用：书库不为空时创建一个快照
+     * 快照失败时抛出异常，调用方应放弃这次修改
+     * 只对默认数据库生效（基准测试等使用的临时数据库不做快照），snapshot.beforeBulkChanges=false 时关闭
+     * @return 创建的快照，没有创建时返回 null
+     */
+    public static Snapshot beforeBulkChange(ConnectionPool pool, String reason) throws SQLException, IOException {
+        if (!BEFORE_BULK_CHANGES || !ConnectionPool.isDefault(pool)) return null;
+        boolean empty = pool.read(conn -> {
+            try (ResultSet rs = conn.prepare("SELECT NOT EXISTS(SELECT 1 FROM books)").executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        });
+        if (empty) return null;
+        Snapshot snapshot = take(reason);
+        System.out.println("已创建快照: " + snapshot.getPath());
+        return snapshot;
+    }
+
+    /**
+     * 立即创建快照（同一时刻只进行一个快照或恢复）
+     * @param reason 来源，写入文件名，只能包含小写字母和连字符
+     */
+    public static synchronized Snapshot take(String reason) throws SQLException, IOException {
+        return take(reason, null);
+    }
+
+    /**
+     * @param protect 清理旧快照时不删除的文件（正要恢复的快照），可为 null
+     */
+    private static Snapshot take(String reason, Path protect) throws SQLException, IOException {
+        long t0 = TAKE.start();
+        try {
+            Files.createDirectories(DIR);
+            LocalDateTime now = LocalDateTime.now().withNano(0);
+            Path target = newPath(now, reason);
+            Path part = target.resolveSibling(target.getFileName() + ".part");
+            Files.deleteIfExists(part);
+            CHANGED.set(false);
+            int pages;
+            try {
+                pages = backup(ConnectionPool.getDefault().getUrl(), part);
+                Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (SQLException | IOException | RuntimeException e) {
+                CHANGED.set(true);
+                Files.deleteIfExists(part);
+                throw e;
+            }
+            prune(protect);
+            TAKE.stop(t0, pages);
+            return new Snapshot(target, now, reason, Files.size(target));
+        } catch (SQLException | IOException | RuntimeException e) {
+            TAKE.fail(t0);
+            throw e;
+        }
+    }
+
+    /**
+     * 把默认数据库复制到文件，不计入快照（压测等在副本上写入，不改动真实书库）
+     */
+    static void copyDefault(Path target) throws SQLException {
+        backup(ConnectionPool.getDefault().getUrl(), target);
+    }
+
+    /**
+     * 用备份 API 把数据库复制到文件
+     * @return 复制的页数
+     */
+    private static int backup(String url, Path target) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url)) {
+            boolean wal;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+                wal = rs.next() && "wal".equalsIgnoreCase(rs.getString(1));
+            }
+            if (wal) {
+                // 打开读事务，固定 WAL 中的快照；回滚日志模式下读事务会挡住写入，不能这样做
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+                    rs.next();
+                }
+            }
+            int[] total = new int[1];
+            DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+            int rc = db.backup("main", target.toString(), (remaining, pageCount) -> {
+                total[0] = pageCount;
+                if (remaining > 0) pause();
+            }, BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+            if (wal) conn.rollback();
+            if (rc != 0) throw new SQLException("创建快照失败，SQLite 错误码 " + rc, null, rc);
+            return total[0];
+        }
+    }
+
+    private static void pause() {
+        if (STEP_DELAY_MILLIS == 0) return;
+        try {
+            Thread.sleep(STEP_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            // 不能从备份回调中中断复制，保留中断状态后尽快完成
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 用快照替换当前数据库（先为当前数据库创建一个 before-restore 快照，恢复之后可以撤销）
+     * 复制在写连接上进行，期间其他写操作等待；读操作不受影响，复制完成后看到的是快照中的数据。
+     * 快照来自旧版本时恢复后自动升级数据库结构
+     */
+    public static synchronized void restore(Path file) throws SQLException, IOException {
+        long t0 = RESTORE.start();
+        try {
+            check(file);
+            take(BEFORE_RESTORE, file);
+            ConnectionPool pool = ConnectionPool.getDefault();
+            int pages = pool.write(conn -> {
+                int[] total = new int[1];
+                DB db = conn.connection().unwrap(SQLiteConnection.class).getDatabase();
+                int rc = db.restore("main", file.toString(), (remaining, pageCount) -> total[0] = pageCount,
+                        BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+                if (rc != 0) throw new SQLException("恢复快照失败，SQLite 错误码 " + rc, null, rc);
+                // 持有写锁时丢弃目录缓存，之后的写入不会用到旧数据库中的目录 ID
+                pool.directories().clear();
+                return total[0];
+            });
+            // 数据库整体被替换：再次丢弃目录缓存（恢复前开始的读取不再写入缓存）和内存索引，按清空通知各监听者重新读取
+            pool.directories().clear();
+            SchemaMigrator.migrate(pool);
+            BookSearchIndex.cleared();
+            BookSearchIndex.catchUp();
+            BookEvents.fireCleared();
+            RESTORE.stop(t0, pages);
+        } catch (SQLException | IOException | RuntimeException e) {
+            RESTORE.fail(t0);
+            throw e;
+        }
+    }
+
+    /**
+     * 恢复之前检查快照文件是完整的书库数据库
+     */
+    private static void check(Path file) throws SQLException, IOException {
+        if (!Files.isRegularFile(file)) throw new IOException("快照文件不存在: " + file);
+        // 不能以只读方式打开：FTS5 表的完整性检查需要写权限
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+                String result = rs.next() ? rs.getString(1) : null;
+                if (!"ok".equals(result)) throw new IOException("快照文件已损坏: " + file + " (" + result + ")");
+            }
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name IN ('books', 'logs')")) {
+                if (!rs.next() || rs.getInt(1) != 2) throw new IOException("不是书库数据库: " + file);
+            }
+        }
+    }
+
+    /**
+     * 快照目录中的所有快照，新的在前
+     */
+    public static List<Snapshot> list() throws IOException {
+        List<Snapshot> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(DIR)) return snapshots;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(DIR, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                Matcher m = NAME.matcher(path.getFileName().toString());
+                if (!m.matches()) continue;
+                try {
+                    LocalDateTime time = LocalDateTime.parse(m.group(1), NAME_TIME);
+                    snapshots.add(new Snapshot(path, time, m.group(2), Files.size(path)));
+                } catch (DateTimeParseException | IOException e) {
+                    // 无法识别或刚被删除的文件
+                }
+            }
+        }
+        snapshots.sort((a, b) -> {
+            int c = b.getTime().compareTo(a.getTime());
+            return c != 0 ? c : b.getPath().getFileName().compareTo(a.getPath().getFileName());
+        });
+        return snapshots;
+    }
+
+    public static void delete(Snapshot snapshot) throws IOException {
+        Files.deleteIfExists(snapshot.getPath());
+    }
+
+    public static Path directory() {
+        return DIR;
+    }
+
+    private static Path newPath(LocalDateTime time, String reason) {
+        if (!reason.matches("[a-z]+(-[a-z]+)*")) throw new IllegalArgumentException("快照来源只能包含小写字母和连字符: " + reason);
+        String base = PREFIX + time.format(NAME_TIME) + "-" + reason;
+        Path path = DIR.resolve(base + SUFFIX);
+        for (int n = 2; Files.exists(path); n++) path = DIR.resolve(base + "-" + n + SUFFIX);
+        return path;
+    }
+
+    /**
+     * 按来源分别保留最近 KEEP 个快照，删除超过保留天数的快照
+     */
+    private static void prune(Path protect) throws IOException {
+        LocalDateTime expire = MAX_AGE_DAYS > 0 ? LocalDateTime.now().minusDays(MAX_AGE_DAYS) : null;
+        Map<String, Integer> kept = new HashMap<>();
+        for (Snapshot snapshot : list()) {
+            int n = kept.merge(snapshot.getReason(), 1, Integer::sum);
+            if (protect != null && Files.isSameFile(snapshot.getPath(), protect)) continue;
+            if ((KEEP > 0 && n > KEEP) || (expire != null && snapshot.getTime().isBefore(expire))) {
+                delete(snapshot);
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 基于 SQLite 连接池的 BookRepository 实现
+ * QueryDB / SetUpDB 的静态方法是它在默认数据库上的包装（出错时打印异常并返回空结果）。
+ * 默认数据库上的写操作之后同步内存搜索索引并发出 BookEvents 变更通知，其他书库（见 CatalogShards）不发通知
+ */
+public class SqliteBookRepository implements BookRepository {
+    // trigram 分词要求关键字至少 3 个字符
+    private static final int FTS_MIN_CHARS = 3;
+    // 默认每批写入的书籍数量
+    private static final int DEFAULT_BATCH_SIZE = 5000;
+
+    // 命令行和 HTTP 服务直接使用仓库接口，这里单独统计（界面经 QueryDB 调用时两层都会计入）
+    private static final Metrics.Timer SEARCH = Metrics.timer("SqliteBookRepository.search");
+    private static final Metrics.Timer SEARCH_SORTED = Metrics.timer("SqliteBookRepository.searchSorted");
+    private static final Metrics.Timer FOR_EACH = Metrics.timer("SqliteBookRepository.forEach");
+    private static final Metrics.Timer PAGE = Metrics.timer("SqliteBookRepository.page");
+    private static final Metrics.Timer IMPORT_STREAM = Metrics.timer("SqliteBookRepository.importStream");
+    private static final Metrics.Timer STATS = Metrics.timer("SqliteBookRepository.stats");
+    private static final Metrics.Timer VACUUM = Metrics.timer("SqliteBookRepository.vacuum");
+
+    /**
+     * 逐行输出结果的查询
+     */
+    private interface Scan {
+        void run(Consumer<Book> consumer) throws SQLException;
+    }
+
+    private static volatile SqliteBookRepository defaultRepository;
+
+    private final ConnectionPool pool;
+
+    public SqliteBookRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 默认数据库 (kindlebooks.db) 上的实例
+     */
+    public static SqliteBookRepository getDefault() {
+        SqliteBookRepository repository = defaultRepository;
+        if (repository == null) {
+            synchronized (SqliteBookRepository.class) {
+                repository = defaultRepository;
+                if (repository == null) {
+                    repository = new SqliteBookRepository(ConnectionPool.getDefault());
+                    defaultRepository = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public Book find(int id) throws SQLException {
+        String sql = "SELECT " + QueryDB.BOOK_COLUMNS + " FROM books b WHERE b.id = ?";
+        return pool.read(conn -> {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? book(conn, rs) : null;
+            }
+        });
+    }
+
+    @Override
+    public int count() throws SQLException {
+        return pool.read(conn -> {
+            try (ResultSet rs = conn.prepare("SELECT COUNT(*) FROM books").executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * 关键字不少于 3 个字符时走 FTS5 trigram 索引并按相关度排序，
+     * 更短的关键字无法用 trigram 索引，退回 LIKE 扫描；内存索引就绪时直接在内存中查找
+     */
+    @Override
+    public void search(String keyword, String kind, Consumer<Book> consumer) throws SQLException {
+        timed(SEARCH, consumer, c -> scanSearch(keyword, kind, c));
+    }
+
+    private void scanSearch(String keyword, String kind, Consumer<Book> consumer) throws SQLException {
+        if (BookSearchIndex.isReady() && ConnectionPool.isDefault(pool)) {
+            for (Vector<Object> row : BookSearchIndex.search(keyword)) {
+                if (kind != null && !kind.equals(row.get(2))) continue;
+                String[] parts = Directories.split((String) row.get(1));
+                consumer.accept(new Book((Integer) row.get(0), new BookPath(parts[0], parts[1]), (String) row.get(2)));
+            }
+            return;
+        }
+
+        String sql;
+        String param;
+        if (keyword.codePointCount(0, keyword.length()) >= FTS_MIN_CHARS) {
+            sql = "SELECT " + QueryDB.BOOK_COLUMNS + " FROM books_fts f JOIN books b ON b.id = f.rowid " +
+                    "WHERE books_fts MATCH ?" + (kind != null ? " AND b.kind = ?" : "") + " ORDER BY f.rank";
+            // 整体作为一个短语匹配，双引号需转义
+            param = "\"" + keyword.replace("\"", "\"\"") + "\"";
+        } else {
+            // SQLite 使用 || 进行字符串拼接；指定类型时先经 (kind, id) 索引缩小范围
+            sql = "SELECT " + QueryDB.BOOK_COLUMNS + " FROM books b LEFT JOIN directories d ON d.id = b.dir_id " +
+                    "WHERE COALESCE(d.path, '') || b.filename LIKE '%' || ? || '%'" +
+                    (kind != null ? " AND b.kind = ?" : "");
+            param = keyword;
+        }
+        pool.read(conn -> {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setString(1, param);
+            if (kind != null) pstmt.setString(2, kind);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) consumer.accept(book(conn, rs));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 按完整路径（相同时按 ID）排序的搜索，最多返回 limit 本，供多个书库的结果归并（见 CatalogShards）
+     * 与 search 的匹配规则相同，但不按相关度排序，也不使用内存索引；
+     * 路径按 SQLite 默认的 BINARY 规则（UTF-8 字节顺序）比较，SQLite 用 LIMIT 只保留前 limit 本
+     */
+    public void searchSorted(String keyword, String kind, int limit, Consumer<Book> consumer) throws SQLException {
+        timed(SEARCH_SORTED, consumer, c -> scanSearchSorted(keyword, kind, limit, c));
+    }
+
+    private void scanSearchSorted(String keyword, String kind, int limit, Consumer<Book> consumer) throws SQLException {
+        String from;
+        String param;
+        if (keyword.codePointCount(0, keyword.length()) >= FTS_MIN_CHARS) {
+            from = " FROM books_fts f JOIN books b ON b.id = f.rowid LEFT JOIN directories d ON d.id = b.dir_id " +
+                    "WHERE books_fts MATCH ?";
+            param = "\"" + keyword.replace("\"", "\"\"") + "\"";
+        } else {
+            from = " FROM books b LEFT JOIN directories d ON d.id = b.dir_id " +
+                    "WHERE COALESCE(d.path, '') || b.filename LIKE '%' || ? || '%'";
+            param = keyword;
+        }
+        String sql = "SELECT " + QueryDB.BOOK_COLUMNS + ", COALESCE(d.path, '') || b.filename AS name" + from +
+                (kind != null ? " AND b.kind = ?" : "") + " ORDER BY name, b.id LIMIT ?";
+        pool.read(conn -> {
+            PreparedStatement pstmt = conn.prepare(sql);
+            int p = 1;
+            pstmt.setString(p++, param);
+            if (kind != null) pstmt.setString(p++, kind);
+            pstmt.setInt(p, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) consumer.accept(book(conn, rs));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void forEach(Consumer<Book> consumer) throws SQLException {
+        timed(FOR_EACH, consumer, this::scanAll);
+    }
+
+    private void scanAll(Consumer<Book> consumer) throws SQLException {
+        String sql = "SELECT " + QueryDB.BOOK_COLUMNS + " FROM books b ORDER BY b.id";
+        pool.read(conn -> {
+            try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+                while (rs.next()) consumer.accept(book(conn, rs));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void page(int beforeId, int limit, String kind, Consumer<Book> consumer) throws SQLException {
+        timed(PAGE, consumer, c -> scanPage(beforeId, limit, kind, c));
+    }
+
+    private void scanPage(int beforeId, int limit, String kind, Consumer<Book> consumer) throws SQLException {
+        String sql = "SELECT " + QueryDB.BOOK_COLUMNS + " FROM books b WHERE b.id < ?" +
+                (kind != null ? " AND b.kind = ?" : "") + " ORDER BY b.id DESC LIMIT ?";
+        pool.read(conn -> {
+            PreparedStatement pstmt = conn.prepare(sql);
+            int p = 1;
+            pstmt.setInt(p++, beforeId);
+            if (kind != null) pstmt.setString(p++, kind);
+            pstmt.setInt(p, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) consumer.accept(book(conn, rs));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 执行查询并计时，行数为实际交给 consumer 的书籍数量
+     */
+    private static void timed(Metrics.Timer timer, Consumer<Book> consumer, Scan scan) throws SQLException {
+        long t0 = timer.start();
+        long[] rows = {0};
+        try {
+            scan.run(book -> {
+                rows[0]++;
+                consumer.accept(book);
+            });
+            timer.stop(t0, rows[0]);
+        } catch (SQLException | RuntimeException e) {
+            timer.fail(t0);
+            throw e;
+        }
+    }
+
+    /**
+     * 把一行 BOOK_COLUMNS 结果转换为 Book
+     * 目录路径来自缓存，同一目录下的书共享同一个字符串
+     */
+    Book book(ConnectionPool.PooledConnection conn, ResultSet rs) throws SQLException {
+        return new Book(rs.getInt(1), new BookPath(pool.directories().pathOf(conn, rs.getInt(2)), rs.getString(3)),
+                rs.getString(4));
+    }
+
+    @Override
+    public Book add(String name, String kind) throws SQLException {
+        String sql = "INSERT INTO books(dir_id, filename, kind) VALUES(?, ?, ?) " +
+                "ON CONFLICT(dir_id, filename) DO NOTHING";
+        String[] parts = Directories.split(name.trim());
+        int id = pool.write(conn -> {
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, pool.directories().idFor(conn, parts[0]));
+            pstmt.setString(2, parts[1]);
+            pstmt.setString(3, kind.trim());
+            return pstmt.executeUpdate() > 0 ? SetUpDB.lastInsertId(conn) : 0;
+        });
+        if (id == 0) return null;
+        if (ConnectionPool.isDefault(pool)) {
+            BookSearchIndex.catchUp();
+            BookEvents.fireInserted(id);
+        }
+        return new Book(id, new BookPath(parts[0], parts[1]), kind.trim());
+    }
+
+    @Override
+    public boolean rename(int id, String newName) throws SQLException {
+        // 自动根据新名字提取后缀
+        String kind = TreeLineParser.kindOf(newName);
+        if (kind == null) kind = "unknown";
+
+        String sql = "UPDATE OR IGNORE books SET dir_id = ?, filename = ?, kind = ? WHERE id = ?";
+        String newKind = kind;
+        String[] parts = Directories.split(newName);
+        boolean updated = pool.transaction(conn -> {
+            int oldDir = dirOf(conn, id);
+            int newDir = pool.directories().idFor(conn, parts[0]);
+            PreparedStatement pstmt = conn.prepare(sql);
+            pstmt.setInt(1, newDir);
+            pstmt.setString(2, parts[1]);
+            pstmt.setString(3, newKind);
+            pstmt.setInt(4, id);
+            boolean changed = pstmt.executeUpdate() > 0;
+            // 移走后原目录可能已空；未改成（新路径已存在）时新建的目录也没有书籍引用
+            pool.directories().prune(conn, oldDir);
+            pool.directories().prune(conn, newDir);
+            return changed;
+        });
+        if (updated && ConnectionPool.isDefault(pool)) {
+            BookSearchIndex.updated(id, newName, newKind);
+            BookEvents.fireUpdated(id);
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean delete(int id) throws SQLException {
+        boolean deleted = pool.transaction(conn -> {
+            int dir = dirOf(conn, id);
+            PreparedStatement pstmt = conn.prepare("DELETE FROM books WHERE id = ?");
+            pstmt.setInt(1, id);
+            boolean changed = pstmt.executeUpdate() > 0;
+            if (changed) pool.directories().prune(conn, dir);
+            return changed;
+        });
+        if (deleted && ConnectionPool.isDefault(pool)) {
+            BookSearchIndex.deleted(id);
+            BookEvents.fireDeleted(id);
+        }
+        return deleted;
+    }
+
+    /**
+     * 书籍所在目录的 ID，书籍不存在时为 0
+     */
+    private static int dirOf(ConnectionPool.PooledConnection conn, int id) throws SQLException {
+        PreparedStatement pstmt = conn.prepare("SELECT dir_id FROM books WHERE id = ?");
+        pstmt.setInt(1, id);
+        try (ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * 清空之前先为默认数据库创建快照（见 Snapshots），快照失败时不清空
+     */
+    @Override
+    public void clear() throws SQLException {
+        try {
+            Snapshots.beforeBulkChange(pool, Snapshots.BEFORE_CLEAR);
+        } catch (IOException e) {
+            throw new SQLException("清空前创建快照失败: " + e.getMessage(), e);
+        }
+        pool.transaction(conn -> {
+            conn.prepare("DELETE FROM books").executeUpdate();
+            conn.prepare("DELETE FROM directories").executeUpdate();
+            conn.prepare("DELETE FROM import_files").executeUpdate();
+            conn.prepare("DELETE FROM kind_counts").executeUpdate();
+            // 重置自增ID
+            conn.prepare("DELETE FROM sqlite_sequence WHERE name IN ('books', 'directories')").executeUpdate();
+            // 在持有写锁时清空目录缓存：提交之后其他写线程不能再从缓存取到已删除的目录 ID
+            pool.directories().clear();
+            return null;
+        });
+        // 提交前开始读取的连接看到的是旧数据，提交后再清空一次，让它们读到的目录不再写入缓存
+        pool.directories().clear();
+        if (ConnectionPool.isDefault(pool)) {
+            BookSearchIndex.cleared();
+            BookEvents.fireCleared();
+        }
+    }
+
+    @Override
+    public long importFiles(List<Path> paths, SetUpDB.ImportProgress progress) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> stream = Files.walk(path)) {
+                    stream.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(".txt"))
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        if (!files.isEmpty()) snapshotBeforeImport();
+        // 汇总（新增、移除、跳过的文件）由导入流水线打印
+        try {
+            return pipeline().run(files, progress);
+        } finally {
+            // 已处理的文件同步到内存索引
+            catchUpIndex();
+        }
+    }
+
+    @Override
+    public long importStream(Reader reader, String source, SetUpDB.ImportProgress progress) throws IOException {
+        long t0 = IMPORT_STREAM.start();
+        try {
+            snapshotBeforeImport();
+            long imported = pipeline().runStream(reader, source, progress);
+            IMPORT_STREAM.stop(t0, imported);
+            return imported;
+        } catch (IOException | RuntimeException e) {
+            IMPORT_STREAM.fail(t0);
+            throw e;
+        } finally {
+            catchUpIndex();
+        }
+    }
+
+    /**
+     * 批量导入之前为默认数据库创建快照，快照失败时不导入
+     */
+    private void snapshotBeforeImport() throws IOException {
+        try {
+            Snapshots.beforeBulkChange(pool, Snapshots.BEFORE_IMPORT);
+        } catch (SQLException e) {
+            throw new IOException("导入前创建快照失败: " + e.getMessage(), e);
+        }
+    }
+
+    private ImportPipeline pipeline() {
+        return new ImportPipeline(pool,
+                AppConfig.getInt("import.batchSize", DEFAULT_BATCH_SIZE),
+                AppConfig.getInt("import.parserThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    private void catchUpIndex() {
+        if (!ConnectionPool.isDefault(pool)) return;
+        try {
+            BookSearchIndex.catchUp();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public BookStats stats() throws SQLException {
+        long t0 = STATS.start();
+        try {
+            BookStats stats = readStats();
+            STATS.stop(t0, 1);
+            return stats;
+        } catch (SQLException | RuntimeException e) {
+            STATS.fail(t0);
+            throw e;
+        }
+    }
+
+    private BookStats readStats() throws SQLException {
+        return pool.read(conn -> {
+            Map<String, Integer> kinds = readKindCounts(conn);
+            int books = 0;
+            for (int n : kinds.values()) books += n;
+            return new BookStats(books,
+                    queryInt(conn, "SELECT COUNT(*) FROM directories"),
+                    queryInt(conn, "SELECT COUNT(*) FROM import_files"),
+                    queryInt(conn, "SELECT COUNT(*) FROM logs"),
+                    (long) queryInt(conn, "PRAGMA page_count") * queryInt(conn, "PRAGMA page_size"),
+                    queryInt(conn, "PRAGMA user_version"),
+                    kinds);
+        });
+    }
+
+    @Override
+    public Map<String, Integer> kindCounts() throws SQLException {
+        return pool.read(SqliteBookRepository::readKindCounts);
+    }
+
+    /**
+     * 读取由触发器维护的 kind_counts 表（每个类型一行，不扫描 books）
+     */
+    static Map<String, Integer> readKindCounts(ConnectionPool.PooledConnection conn) throws SQLException {
+        Map<String, Integer> kinds = new LinkedHashMap<>();
+        try (ResultSet rs = conn.prepare("SELECT kind, n FROM kind_counts WHERE n > 0 ORDER BY n DESC, kind")
+                .executeQuery()) {
+            while (rs.next()) kinds.put(rs.getString(1), rs.getInt(2));
+        }
+        return kinds;
+    }
+
+    private static int queryInt(ConnectionPool.PooledConnection conn, String sql) throws SQLException {
+        try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Override
+    public void vacuum() throws SQLException {
+        long t0 = VACUUM.start();
+        try {
+            compact();
+            VACUUM.stop(t0, 0);
+        } catch (SQLException | RuntimeException e) {
+            VACUUM.fail(t0);
+            throw e;
+        }
+    }
+
+    private void compact() throws SQLException {
+        pool.write(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                // 合并全文索引的分段
+                stmt.executeUpdate("INSERT INTO books_fts(books_fts) VALUES ('optimize')");
+                stmt.execute("PRAGMA optimize");
+                stmt.executeUpdate("VACUUM");
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,113 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQLite 存储参数
+ * 每个新连接打开时执行对应的 PRAGMA。通过 db.profile 选择一组预设值，
+ * 单独的 db.* 配置项可以覆盖预设中的任意一项：
+ * <ul>
+ *   <li>fast（默认）：WAL 日志，synchronous=NORMAL，较大的页缓存和内存映射，临时表放在内存中</li>
+ *   <li>safe：WAL 日志，synchronous=FULL，每次提交都落盘</li>
+ *   <li>legacy：SQLite 默认设置（回滚日志）</li>
+ * </ul>
+ * WAL 模式下读连接不会被写入阻塞，导入过程中搜索和日志写入可以照常进行
+ */
+public class StorageProfile {
+    private final String journalMode;
+    private final String synchronous;
+    // 页缓存大小 (KB)，0 表示使用 SQLite 默认值
+    private final int cacheSizeKb;
+    // 内存映射大小 (MB)
+    private final int mmapSizeMb;
+    private final String tempStore;
+    private final int busyTimeoutMillis;
+    private final int busyRetries;
+    private final int walAutoCheckpoint;
+    private final int checkpointSeconds;
+
+    public StorageProfile(String journalMode, String synchronous, int cacheSizeKb, int mmapSizeMb,
+                          String tempStore, int busyTimeoutMillis, int busyRetries,
+                          int walAutoCheckpoint, int checkpointSeconds) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheSizeKb = cacheSizeKb;
+        this.mmapSizeMb = mmapSizeMb;
+        this.tempStore = tempStore;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+        this.busyRetries = busyRetries;
+        this.walAutoCheckpoint = walAutoCheckpoint;
+        this.checkpointSeconds = checkpointSeconds;
+    }
+
+    /**
+     * 按配置文件/系统属性生成存储参数
+     */
+    public static StorageProfile fromConfig() {
+        String name = AppConfig.get("db.profile", "fast").toLowerCase();
+        StorageProfile base;
+        switch (name) {
+            case "safe":
+                base = new StorageProfile("WAL", "FULL", 16384, 0, "DEFAULT", 5000, 3, 1000, 30);
+                break;
+            case "legacy":
+                base = new StorageProfile("DELETE", "FULL", 0, 0, "DEFAULT", 5000, 3, 1000, 0);
+                break;
+            default:
+                if (!name.equals("fast")) System.err.println("未知的 db.profile: " + name + "，使用 fast");
+                base = new StorageProfile("WAL", "NORMAL", 65536, 256, "MEMORY", 5000, 3, 10000, 30);
+                break;
+        }
+        return new StorageProfile(
+                AppConfig.get("db.journalMode", base.journalMode).toUpperCase(),
+                AppConfig.get("db.synchronous", base.synchronous).toUpperCase(),
+                AppConfig.getInt("db.cacheSizeKb", base.cacheSizeKb),
+                AppConfig.getInt("db.mmapSizeMb", base.mmapSizeMb),
+                AppConfig.get("db.tempStore", base.tempStore).toUpperCase(),
+                AppConfig.getInt("db.busyTimeoutMillis", base.busyTimeoutMillis),
+                AppConfig.getInt("db.busyRetries", base.busyRetries),
+                AppConfig.getInt("db.walAutoCheckpoint", base.walAutoCheckpoint),
+                AppConfig.getInt("db.checkpointSeconds", base.checkpointSeconds));
+    }
+
+    /**
+     * 对新打开的连接执行 PRAGMA
+     */
+    void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // busy_timeout 最先设置，后面切换日志模式时也可能需要等待锁
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            stmt.execute("PRAGMA journal_mode = " + journalMode);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            if (cacheSizeKb > 0) stmt.execute("PRAGMA cache_size = -" + cacheSizeKb);
+            stmt.execute("PRAGMA mmap_size = " + (long) mmapSizeMb * 1024 * 1024);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+            if (isWal()) stmt.execute("PRAGMA wal_autocheckpoint = " + walAutoCheckpoint);
+        }
+    }
+
+    public boolean isWal() {
+        return "WAL".equals(journalMode);
+    }
+
+    /**
+     * busy_timeout 到期后仍然遇到锁冲突时整体重试的次数
+     */
+    public int getBusyRetries() {
+        return busyRetries;
+    }
+
+    /**
+     * 后台被动检查点的间隔（秒），0 表示不启动
+     */
+    public int getCheckpointSeconds() {
+        return checkpointSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "journal_mode=" + journalMode + ", synchronous=" + synchronous + ", cache_size=" + cacheSizeKb
+                + "KB, mmap_size=" + mmapSizeMb + "MB, temp_store=" + tempStore + ", busy_timeout=" + busyTimeoutMillis
+                + "ms, retries=" + busyRetries + ", checkpoint=" + checkpointSeconds + "s";
+    }
+}
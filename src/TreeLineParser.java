@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * tree / ls -R 索引文本的解析器（不使用正则）
+ * 直接在字符缓冲区上识别目录行和电子书后缀，与原来的
+ * {@code ^[./].*} 和 {@code \.(pdf|mobi|epub|azw3|html|txt)$} 判断结果完全一致；
+ * 只为目录行和书籍行创建字符串，目录前缀经过去重，每个只保存一份
+ */
+public class TreeLineParser {
+    public static final String PDF = "pdf";
+    public static final String MOBI = "mobi";
+    public static final String EPUB = "epub";
+    public static final String AZW3 = "azw3";
+    public static final String HTML = "html";
+    public static final String TXT = "txt";
+
+    /**
+     * 解析结果的接收方
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * @param dir 当前目录行（去重后的共享实例），尚未遇到目录行时为 ""
+         * @param line 书籍所在的整行
+         * @param kind 后缀名（上面的常量之一）
+         */
+        void book(String dir, String line, String kind) throws IOException;
+    }
+
+    private final Reader reader;
+    private final Map<String, String> dirPool;
+    private char[] buf = new char[1 << 16];
+    private long lines;
+
+    /**
+     * @param reader 索引文本
+     * @param dirPool 目录前缀去重表，可在多个解析器之间共享（需线程安全）
+     */
+    public TreeLineParser(Reader reader, Map<String, String> dirPool) {
+        this.reader = reader;
+        this.dirPool = dirPool;
+    }
+
+    /**
+     * 已读取的行数（与 BufferedReader.readLine 的计数方式相同）
+     */
+    public long lines() {
+        return lines;
+    }
+
+    /**
+     * 读取全部内容，把每本书交给 sink
+     */
+    public void parse(Sink sink) throws IOException {
+        String dir = "";
+        int start = 0;      // 当前行起点
+        int end = 0;        // 缓冲区有效数据终点
+        int scan = 0;       // 换行符扫描位置
+        boolean skipLF = false;
+        boolean eof = false;
+
+        while (true) {
+            // 在缓冲区中寻找行结束符
+            int eol = -1;
+            for (int i = scan; i < end; i++) {
+                char c = buf[i];
+                if (c == '\n' || c == '\r') { eol = i; break; }
+            }
+
+            if (eol < 0) {
+                if (eof) {
+                    if (start < end) {
+                        dir = line(start, end, dir, sink);
+                    }
+                    return;
+                }
+                // 把未完成的行移到缓冲区开头，必要时扩容
+                int pending = end - start;
+                if (start > 0) {
+                    System.arraycopy(buf, start, buf, 0, pending);
+                } else if (pending == buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                start = 0;
+                end = pending;
+                scan = pending;
+                int n = reader.read(buf, end, buf.length - end);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    // \r\n 跨越缓冲区边界时跳过 \n
+                    if (skipLF && n > 0 && end == 0 && buf[0] == '\n') {
+                        System.arraycopy(buf, 1, buf, 0, n - 1);
+                        n--;
+                    }
+                    skipLF = false;
+                    end += n;
+                }
+                continue;
+            }
+
+            dir = line(start, eol, dir, sink);
+            start = eol + 1;
+            if (buf[eol] == '\r') {
+                if (start < end) {
+                    if (buf[start] == '\n') start++;
+                } else {
+                    skipLF = true;
+                }
+            }
+            scan = start;
+        }
+    }
+
+    /**
+     * 处理一行，返回处理后的当前目录
+     */
+    private String line(int from, int to, String dir, Sink sink) throws IOException {
+        lines++;
+        String kind = kindOf(buf, from, to);
+        if (isDirectoryHeader(buf, from, to)) {
+            String header = new String(buf, from, to - from);
+            String shared = dirPool.putIfAbsent(header, header);
+            dir = shared == null ? header : shared;
+            // 目录行本身以电子书后缀结尾时也按原逻辑计为一本书
+            if (kind != null) sink.book(dir, dir, kind);
+        } else if (kind != null) {
+            sink.book(dir, new String(buf, from, to - from), kind);
+        }
+        return dir;
+    }
+
+    // ================= 行分类 =================
+
+    /**
+     * 是否是目录行（以 . 或 / 开头）
+     */
+    public static boolean isDirectoryHeader(char[] s, int from, int to) {
+        return from < to && (s[from] == '.' || s[from] == '/');
+    }
+
+    /**
+     * 识别电子书后缀
+     * @return 后缀名常量，不是电子书时返回 null
+     */
+    public static String kindOf(String name) {
+        if (name == null) return null;
+        return kindOf(name.toCharArray(), 0, name.length());
+    }
+
+    /**
+     * 识别字符区间末尾的电子书后缀（区分大小写）
+     * 与正则的 $ 一致：末尾是单个行分隔符 (U+0085、U+2028、U+2029) 时也在其之前匹配
+     */
+    public static String kindOf(char[] s, int from, int to) {
+        String kind = suffixAt(s, from, to);
+        if (kind == null && to > from) {
+            char last = s[to - 1];
+            if (last == '\u0085' || last == '\u2028' || last == '\u2029') {
+                kind = suffixAt(s, from, to - 1);
+            }
+        }
+        return kind;
+    }
+
+    private static String suffixAt(char[] s, int from, int to) {
+        int len = to - from;
+        if (len >= 4 && s[to - 4] == '.') {
+            char a = s[to - 3], b = s[to - 2], c = s[to - 1];
+            if (a == 'p' && b == 'd' && c == 'f') return PDF;
+            if (a == 't' && b == 'x' && c == 't') return TXT;
+        }
+        if (len >= 5 && s[to - 5] == '.') {
+            char a = s[to - 4], b = s[to - 3], c = s[to - 2], d = s[to - 1];
+            if (a == 'm' && b == 'o' && c == 'b' && d == 'i') return MOBI;
+            if (a == 'e' && b == 'p' && c == 'u' && d == 'b') return EPUB;
+            if (a == 'a' && b == 'z' && c == 'w' && d == '3') return AZW3;
+            if (a == 'h' && b == 't' && c == 'm' && d == 'l') return HTML;
+        }
+        return null;
+    }
+}